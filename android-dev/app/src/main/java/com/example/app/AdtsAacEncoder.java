@@ -0,0 +1,155 @@
+package com.example.app;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import okhttp3.MediaType;
+
+// Encodes 16-bit PCM to AAC-LC with MediaCodec and writes it as an ADTS stream (each frame
+// carries its own header, so the stream can be uploaded before it is complete).
+public class AdtsAacEncoder {
+
+    // The one content type for voice uploads; it must match the stream written below
+    public static final MediaType CONTENT_TYPE = MediaType.parse("audio/aac");
+
+    private static final int[] ADTS_SAMPLE_RATES = {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350};
+    private static final int ADTS_HEADER_BYTES = 7;
+    private static final long TIMEOUT_US = 10_000;
+
+    private final MediaCodec codec;
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    private final OutputStream out;
+    private final int sampleRate;
+    private final int channels;
+    private final int frequencyIndex;
+    private byte[] frame = new byte[2048];
+    private long framesQueued;
+
+    public AdtsAacEncoder(int sampleRate, int channels, int bitRate, OutputStream out) throws IOException {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.out = out;
+        this.frequencyIndex = frequencyIndex(sampleRate);
+        MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, sampleRate, channels);
+        format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+        codec = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_AUDIO_AAC);
+        try {
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            codec.start();
+        } catch (RuntimeException e) {
+            codec.release();
+            throw e;
+        }
+    }
+
+    // Encodes interleaved samples and writes out whatever frames are ready.
+    public void encode(short[] pcm, int offset, int length) throws IOException {
+        while (length > 0) {
+            int index = codec.dequeueInputBuffer(TIMEOUT_US);
+            if (index < 0) {
+                // All input buffers busy: make room by taking output
+                drain(false);
+                continue;
+            }
+            ByteBuffer input = codec.getInputBuffer(index);
+            input.clear();
+            int count = Math.min(length, input.remaining() / 2);
+            input.order(ByteOrder.nativeOrder()).asShortBuffer().put(pcm, offset, count);
+            codec.queueInputBuffer(index, 0, count * 2, presentationTimeUs(), 0);
+            framesQueued += count / channels;
+            offset += count;
+            length -= count;
+            drain(false);
+        }
+    }
+
+    // Flushes the encoder, writes the last frames and closes the stream.
+    public void finish() throws IOException {
+        try {
+            int index;
+            while ((index = codec.dequeueInputBuffer(TIMEOUT_US)) < 0) {
+                drain(false);
+            }
+            codec.queueInputBuffer(index, 0, 0, presentationTimeUs(), MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            drain(true);
+        } finally {
+            release();
+        }
+    }
+
+    // Stops without flushing, e.g. when the upload reading the stream has gone away.
+    public void release() {
+        codec.release();
+        try {
+            out.close();
+        } catch (IOException ignored) {
+            // Nothing more to send
+        }
+    }
+
+    private long presentationTimeUs() {
+        return framesQueued * 1_000_000L / sampleRate;
+    }
+
+    // Writes out encoded frames; with 'endOfStream', waits until the codec has emitted the last one.
+    private void drain(boolean endOfStream) throws IOException {
+        while (true) {
+            int index = codec.dequeueOutputBuffer(info, endOfStream ? TIMEOUT_US : 0);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (endOfStream) {
+                    continue;
+                }
+                return;
+            }
+            if (index < 0) {
+                // Format or buffer changes; ADTS headers carry everything we need
+                continue;
+            }
+            boolean config = (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+            if (!config && info.size > 0) {
+                ByteBuffer output = codec.getOutputBuffer(index);
+                output.position(info.offset);
+                output.limit(info.offset + info.size);
+                writeFrame(output, info.size);
+            }
+            codec.releaseOutputBuffer(index, false);
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                return;
+            }
+        }
+    }
+
+    private void writeFrame(ByteBuffer payload, int size) throws IOException {
+        int length = size + ADTS_HEADER_BYTES;
+        if (frame.length < length) {
+            frame = new byte[length];
+        }
+        // MPEG-4, no CRC, AAC LC (profile 2, stored as 1)
+        frame[0] = (byte) 0xFF;
+        frame[1] = (byte) 0xF1;
+        frame[2] = (byte) ((1 << 6) | (frequencyIndex << 2) | (channels >> 2));
+        frame[3] = (byte) (((channels & 3) << 6) | (length >> 11));
+        frame[4] = (byte) ((length >> 3) & 0xFF);
+        frame[5] = (byte) (((length & 7) << 5) | 0x1F);
+        frame[6] = (byte) 0xFC;
+        payload.get(frame, ADTS_HEADER_BYTES, size);
+        out.write(frame, 0, length);
+    }
+
+    private static int frequencyIndex(int sampleRate) {
+        for (int i = 0; i < ADTS_SAMPLE_RATES.length; i++) {
+            if (ADTS_SAMPLE_RATES[i] == sampleRate) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No ADTS sample rate index for " + sampleRate);
+    }
+}
@@ -3,6 +3,7 @@ package com.example.app;
 import com.google.gson.annotations.SerializedName;
 
 import java.util.List;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.Field;
@@ -11,6 +12,9 @@ import retrofit2.http.GET;
 import retrofit2.http.POST;
 import retrofit2.http.Path;
 import retrofit2.http.PUT;
+import retrofit2.http.Query;
+import retrofit2.http.Streaming;
+import retrofit2.http.Tag;
 
 public interface ApiService {
     @POST("api/signup")
@@ -29,16 +33,36 @@ public interface ApiService {
     @POST("api/continue_story")
     Call<StoryResponse> continueStory(@Body StoryRequest request);
 
+    // Newline-delimited StoryStreamEvent JSON, read incrementally by StoryStreamClient
+    @Streaming
+    @POST("api/continue_story/stream")
+    Call<ResponseBody> continueStoryStream(@Body StoryRequest request, @Tag TurnTracer.Trace trace);
+
     @POST("api/stories")
     Call<Story> createStory(@Body FullStoryCreate story);
 
     @GET("api/stories")
     Call<List<Story>> readStories();
 
+    // One page of the library list (summaries, no chapters), read by LibraryIngestor. 'cursor' is
+    // the previous page's next_cursor; with updated_since (the X-Sync-Time of an earlier page)
+    // only stories changed after that are listed.
+    @Streaming
+    @GET("api/stories/summaries")
+    Call<ResponseBody> readStorySummaries(@Query("cursor") Integer cursor, @Query("limit") int limit,
+                                          @Query("updated_since") String updatedSince);
+
     // NEW: Add the endpoint for fetching a single story
     @GET("api/stories/{story_id}")
     Call<Story> getStoryDetails(@Path("story_id") int storyId);
 
+    // Chapter titles only (content is null); the reader fetches chapter text with getChapter
+    @GET("api/stories/{story_id}/outline")
+    Call<Story> getStoryOutline(@Path("story_id") int storyId);
+
+    @GET("api/stories/{story_id}/chapters/{chapter_number}")
+    Call<Chapter> getChapter(@Path("story_id") int storyId, @Path("chapter_number") int chapterNumber);
+
     @POST("api/stories/{story_id}/generate_cover")
     Call<Story> generateCover(@Path("story_id") int storyId);
 
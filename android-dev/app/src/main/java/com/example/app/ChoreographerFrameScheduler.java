@@ -0,0 +1,31 @@
+package com.example.app;
+
+import android.view.Choreographer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Runs TypewriterRenderer frames in step with the display's vsync. Must be used on the main thread.
+public class ChoreographerFrameScheduler implements TypewriterRenderer.FrameScheduler {
+
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private final Map<TypewriterRenderer.FrameListener, Choreographer.FrameCallback> callbacks = new HashMap<>();
+
+    @Override
+    public void scheduleFrame(TypewriterRenderer.FrameListener listener) {
+        Choreographer.FrameCallback callback = callbacks.get(listener);
+        if (callback == null) {
+            callback = listener::onFrame;
+            callbacks.put(listener, callback);
+        }
+        choreographer.postFrameCallback(callback);
+    }
+
+    @Override
+    public void cancelFrame(TypewriterRenderer.FrameListener listener) {
+        Choreographer.FrameCallback callback = callbacks.get(listener);
+        if (callback != null) {
+            choreographer.removeFrameCallback(callback);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.app;
+
+import java.io.IOException;
+
+import okio.Sink;
+import okio.Source;
+
+// A content coding for request and response bodies, named by its Content-Encoding token.
+// CompressionInterceptor offers every registered codec in Accept-Encoding and uses the first one
+// for request bodies. gzip is built in (GzipCodec); zstd or a dictionary-trained codec can be
+// added by implementing this and registering it in RetrofitClient.
+public interface CompressionCodec {
+
+    String encoding();
+
+    Sink compress(Sink sink) throws IOException;
+
+    Source decompress(Source source) throws IOException;
+}
@@ -0,0 +1,180 @@
+package com.example.app;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+import retrofit2.Invocation;
+import retrofit2.http.Streaming;
+
+// Compresses request bodies above a size threshold and negotiates compressed responses.
+// Story context, saved chapters and library responses are prose and shrink several times over,
+// and on cellular the upload is usually the slow part of a turn. Raw vs. encoded sizes go into
+// NetworkMetrics so the ratio shows up next to the other per-endpoint numbers.
+public class CompressionInterceptor implements Interceptor {
+
+    // Below this the headers and codec framing cost more than they save.
+    public static final long DEFAULT_MIN_REQUEST_BYTES = 1024;
+
+    private final long minRequestBytes;
+    private final List<CompressionCodec> codecs;
+    private final String acceptEncoding;
+
+    public CompressionInterceptor(long minRequestBytes, CompressionCodec... codecs) {
+        if (codecs.length == 0) {
+            throw new IllegalArgumentException("At least one codec is required");
+        }
+        this.minRequestBytes = minRequestBytes;
+        this.codecs = Arrays.asList(codecs);
+        StringBuilder sb = new StringBuilder();
+        for (CompressionCodec codec : codecs) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(codec.encoding());
+        }
+        this.acceptEncoding = sb.toString();
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        String endpoint = NetworkMetrics.endpointOf(request);
+        Request.Builder builder = request.newBuilder();
+        // Setting Accept-Encoding ourselves turns off OkHttp's transparent gzip, so we decode below.
+        // @Streaming responses are read as they arrive, and a compressor holds them back until it
+        // has a block to emit, so those ask for identity (which also keeps OkHttp's gzip off).
+        if (request.header("Accept-Encoding") == null) {
+            builder.header("Accept-Encoding", isStreaming(request) ? "identity" : acceptEncoding);
+        }
+
+        RequestBody body = request.body();
+        if (body != null && request.header("Content-Encoding") == null
+                && body.contentLength() >= minRequestBytes && !body.isOneShot() && !body.isDuplex()) {
+            CompressionCodec codec = codecs.get(0);
+            Buffer raw = new Buffer();
+            body.writeTo(raw);
+            long rawBytes = raw.size();
+            Buffer encoded = new Buffer();
+            try (BufferedSink sink = Okio.buffer(codec.compress(encoded))) {
+                sink.writeAll(raw);
+            }
+            // Incompressible payloads go out as they are.
+            if (encoded.size() < rawBytes) {
+                NetworkMetrics.recordRequestCompression(endpoint, rawBytes, encoded.size());
+                builder.header("Content-Encoding", codec.encoding())
+                        .method(request.method(), RequestBody.create(body.contentType(), encoded.readByteString()));
+            }
+        }
+
+        Response response = chain.proceed(builder.build());
+        CompressionCodec codec = codecFor(response.header("Content-Encoding"));
+        ResponseBody responseBody = response.body();
+        if (codec == null || responseBody == null || "HEAD".equals(request.method())) {
+            return response;
+        }
+        return response.newBuilder()
+                .removeHeader("Content-Encoding")
+                .removeHeader("Content-Length")
+                .body(new DecodedResponseBody(responseBody, codec, endpoint))
+                .build();
+    }
+
+    private static boolean isStreaming(Request request) {
+        Invocation invocation = request.tag(Invocation.class);
+        return invocation != null && invocation.method().isAnnotationPresent(Streaming.class);
+    }
+
+    private CompressionCodec codecFor(String encoding) {
+        if (encoding == null) {
+            return null;
+        }
+        for (CompressionCodec codec : codecs) {
+            if (codec.encoding().equalsIgnoreCase(encoding.trim())) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    // Decodes as it is read, so streamed responses still arrive line by line.
+    private static final class DecodedResponseBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+        private final String endpoint;
+        private long encodedBytes = 0;
+        private long decodedBytes = 0;
+        private boolean recorded = false;
+
+        DecodedResponseBody(ResponseBody delegate, CompressionCodec codec, String endpoint) throws IOException {
+            this.delegate = delegate;
+            this.endpoint = endpoint;
+            Source encoded = new ForwardingSource(delegate.source()) {
+                @Override
+                public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if (read > 0) {
+                        encodedBytes += read;
+                    }
+                    return read;
+                }
+            };
+            this.source = Okio.buffer(new ForwardingSource(codec.decompress(encoded)) {
+                @Override
+                public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if (read == -1) {
+                        record();
+                    } else {
+                        decodedBytes += read;
+                    }
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    record();
+                    super.close();
+                }
+            });
+        }
+
+        private void record() {
+            if (!recorded) {
+                recorded = true;
+                NetworkMetrics.recordResponseCompression(endpoint, decodedBytes, encodedBytes);
+            }
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return -1;
+        }
+
+        @NonNull
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.app;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+// Opens a connection (DNS + TCP + TLS) to a host ahead of the first real request, by sending a
+// cheap HEAD through the shared client. The connection stays in NetworkCore's pool, so the next
+// API call to that host skips the handshakes. A client with a pool of its own
+// (HuggingFaceRetrofitClient) is warmed up through that client, or its calls wouldn't see the
+// connection.
+public class ConnectionPrewarmer {
+
+    // Don't re-warm a host more often than this; an idle pooled connection lives ~5 minutes.
+    private static final long MIN_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    private static final ConcurrentHashMap<String, Long> lastWarmed = new ConcurrentHashMap<>();
+
+    public static void prewarm(String baseUrl) {
+        prewarm(NetworkCore.getHttpClient(), baseUrl);
+    }
+
+    public static void prewarm(OkHttpClient client, String baseUrl) {
+        long now = System.currentTimeMillis();
+        Long last = lastWarmed.get(baseUrl);
+        if (last != null && now - last < MIN_INTERVAL_MILLIS) {
+            return;
+        }
+        lastWarmed.put(baseUrl, now);
+
+        Request request = new Request.Builder()
+                .url(baseUrl)
+                .head()
+                .build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                // Any status is fine; we only wanted the connection.
+                response.close();
+            }
+
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                lastWarmed.remove(baseUrl);
+                Log.w("ConnectionPrewarmer", "Could not pre-warm " + baseUrl, e);
+            }
+        });
+    }
+}
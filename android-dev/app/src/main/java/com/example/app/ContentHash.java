@@ -0,0 +1,37 @@
+package com.example.app;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Short content hash shared with the backend (first 16 hex chars of SHA-256 over UTF-8).
+public class ContentHash {
+
+    public static String of(CharSequence text) {
+        return of(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String of(byte[] data) {
+        MessageDigest digest = newDigest();
+        digest.update(data);
+        return toHex(digest.digest());
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is guaranteed on every Android version.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] hash) {
+        StringBuilder sb = new StringBuilder(16);
+        for (int i = 0; i < 8; i++) {
+            sb.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(hash[i] & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
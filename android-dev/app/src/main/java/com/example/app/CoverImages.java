@@ -0,0 +1,125 @@
+package com.example.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.LruCache;
+import com.squareup.picasso.NetworkPolicy;
+import com.squareup.picasso.OkHttp3Downloader;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+import java.io.File;
+import java.util.List;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+
+// Loads story covers. Generated covers are 1024px+ PNGs, so they are never decoded at full size:
+//   - library thumbnails are decoded at the row's cover size (cover_thumb_width/height) as RGB_565
+//   - the memory cache is an LRU with a byte budget (a share of the heap), not an entry count
+//   - downloads go through a disk cache, so covers survive process death and aren't re-downloaded
+//   - rows just below the viewport are prefetched into memory (prefetchThumbnails)
+//   - the story viewer shows the cached thumbnail at once and swaps in a header-sized decode
+public class CoverImages {
+
+    private static final long DISK_CACHE_BYTES = 50L * 1024 * 1024;
+    // Share of the heap the decoded covers may use
+    private static final int MEMORY_CACHE_DIVISOR = 8;
+
+    private static volatile Picasso picasso;
+
+    public static Picasso getPicasso(Context context) {
+        Picasso instance = picasso;
+        if (instance == null) {
+            synchronized (CoverImages.class) {
+                instance = picasso;
+                if (instance == null) {
+                    Context appContext = context.getApplicationContext();
+                    // Shares the app's connection pool and dispatcher; only adds the disk cache
+                    OkHttpClient client = NetworkCore.getHttpClient().newBuilder()
+                            .cache(new Cache(new File(appContext.getCacheDir(), "covers"), DISK_CACHE_BYTES))
+                            .build();
+                    int memoryBytes = (int) (Runtime.getRuntime().maxMemory() / MEMORY_CACHE_DIVISOR);
+                    instance = new Picasso.Builder(appContext)
+                            .downloader(new OkHttp3Downloader(client))
+                            .memoryCache(new LruCache(memoryBytes))
+                            .build();
+                    picasso = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    // Library thumbnail request. Viewer and prefetch use exactly the same request so they share
+    // its memory cache entry.
+    private static RequestCreator thumbnail(Context context, String url) {
+        return getPicasso(context)
+                .load(url)
+                .resize(context.getResources().getDimensionPixelSize(R.dimen.cover_thumb_width),
+                        context.getResources().getDimensionPixelSize(R.dimen.cover_thumb_height))
+                .centerCrop()
+                // Covers are opaque; half the bytes of ARGB_8888
+                .config(Bitmap.Config.RGB_565);
+    }
+
+    public static void loadThumbnail(ImageView imageView, String url) {
+        if (url == null || url.isEmpty()) {
+            getPicasso(imageView.getContext()).cancelRequest(imageView);
+            imageView.setImageResource(android.R.drawable.ic_menu_gallery);
+            return;
+        }
+        thumbnail(imageView.getContext(), url)
+                .placeholder(android.R.drawable.ic_menu_gallery)
+                .error(android.R.drawable.ic_menu_report_image)
+                .into(imageView);
+    }
+
+    // Decodes covers into the memory cache ahead of their rows being bound.
+    public static void prefetchThumbnails(Context context, List<String> urls) {
+        for (String url : urls) {
+            if (url != null && !url.isEmpty()) {
+                thumbnail(context, url).priority(Picasso.Priority.LOW).fetch();
+            }
+        }
+    }
+
+    // Header cover: the library thumbnail (if it is cached) shows immediately, then the cover is
+    // decoded at the header's own size with the thumbnail as placeholder.
+    public static void loadHeader(ImageView imageView, String url) {
+        if (url == null || url.isEmpty()) {
+            return;
+        }
+        // A memory hit is set synchronously; otherwise only the disk cache is tried
+        thumbnail(imageView.getContext(), url)
+                .networkPolicy(NetworkPolicy.OFFLINE)
+                .noFade()
+                .into(imageView, new Callback() {
+                    @Override
+                    public void onSuccess() {
+                        loadHeaderFullSize(imageView, url, imageView.getDrawable());
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        loadHeaderFullSize(imageView, url, null);
+                    }
+                });
+    }
+
+    private static void loadHeaderFullSize(ImageView imageView, String url, Drawable placeholder) {
+        RequestCreator request = getPicasso(imageView.getContext())
+                .load(url)
+                // Decoded at the view's measured size
+                .fit()
+                .centerCrop();
+        if (placeholder != null) {
+            request.placeholder(placeholder);
+        }
+        request.into(imageView);
+    }
+}
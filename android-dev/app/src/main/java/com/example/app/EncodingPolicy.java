@@ -0,0 +1,132 @@
+package com.example.app;
+
+import java.util.Locale;
+
+// Picks how voice clips are encoded from what recent uploads and transcriptions have shown about
+// the network. Audio is streamed while it is spoken, so the upload keeps up only if the link is
+// faster than the bitrate; on a link that can't, every second of speech adds to the wait after
+// the button is released. So the bitrate is chosen to leave headroom under the measured upload
+// throughput, with more headroom while transcriptions have been slow.
+//
+// Throughput comes from the streamed uploads themselves (see StreamingAudioBody):
+//   - an upload that spent most of its time blocked on the socket was network-bound, and its
+//     rate is a measurement of the link
+//   - one that mostly waited for audio kept up; the link is at least that fast, and we optimistically
+//     assume some more, so that the next clip can try the profile above
+// Both feed a moving average, so a guess that later uploads don't back up fades out again.
+// Every profile is SAMPLE_RATE mono, which is also what VoiceCapture records: Whisper resamples
+// everything to 16 kHz mono, so more rate or channels would only cost bytes. Plain Java; the
+// app shares one instance (getInstance()).
+public class EncodingPolicy {
+
+    public static final class Profile {
+        public final String name;
+        public final int sampleRate;
+        public final int channels;
+        public final int bitRate;
+
+        Profile(String name, int sampleRate, int channels, int bitRate) {
+            this.name = name;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.bitRate = bitRate;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s (%d Hz, %d ch, %d kbps)", name, sampleRate, channels, bitRate / 1000);
+        }
+    }
+
+    public static final int SAMPLE_RATE = 16000;
+
+    public static final Profile MINIMAL = new Profile("minimal", SAMPLE_RATE, 1, 16000);
+    public static final Profile LOW = new Profile("low", SAMPLE_RATE, 1, 24000);
+    public static final Profile STANDARD = new Profile("standard", SAMPLE_RATE, 1, 32000);
+    public static final Profile HIGH = new Profile("high", SAMPLE_RATE, 1, 48000);
+    // Cheapest first
+    private static final Profile[] PROFILES = {MINIMAL, LOW, STANDARD, HIGH};
+
+    // Share of the measured throughput the audio may use
+    private static final double UTILIZATION = 0.75;
+    private static final double SLOW_UTILIZATION = 0.5;
+    // Transcriptions slower than this (from the end of the clip) call for more headroom
+    private static final long SLOW_TRANSCRIPTION_MILLIS = 4000;
+    // An upload blocked on the network for at least this share of its time was network-bound
+    private static final double NETWORK_BOUND_SHARE = 0.5;
+    // How much faster than a kept-up upload we guess the link might be
+    private static final double PROBE_FACTOR = 2.5;
+    private static final double ALPHA = 0.4;
+
+    private static final EncodingPolicy shared = new EncodingPolicy();
+
+    public static EncodingPolicy getInstance() {
+        return shared;
+    }
+
+    // Running estimates; negative until measured
+    private double throughputBytesPerSecond = -1;
+    private double transcriptionMillis = -1;
+    private int lastProfile = indexOf(STANDARD);
+
+    // The profile for the next clip. Without measurements it is STANDARD. Moves up at most one
+    // step per clip, so a guess about the link is tested before it is relied on.
+    public synchronized Profile choose() {
+        if (throughputBytesPerSecond < 0) {
+            return PROFILES[lastProfile];
+        }
+        double utilization = transcriptionMillis > SLOW_TRANSCRIPTION_MILLIS ? SLOW_UTILIZATION : UTILIZATION;
+        double budgetBitsPerSecond = throughputBytesPerSecond * 8 * utilization;
+        int chosen = 0;
+        for (int i = 1; i < PROFILES.length; i++) {
+            if (PROFILES[i].bitRate <= budgetBitsPerSecond) {
+                chosen = i;
+            }
+        }
+        lastProfile = Math.min(chosen, lastProfile + 1);
+        return PROFILES[lastProfile];
+    }
+
+    // A streamed upload finished: 'bytes' surely sent over 'elapsedMillis', of which 'blockedMillis'
+    // were spent waiting for the network (writing and flushing) rather than for audio.
+    public synchronized void recordUpload(long bytes, long elapsedMillis, long blockedMillis) {
+        if (elapsedMillis <= 0 || bytes <= 0) {
+            return;
+        }
+        double rate = bytes * 1000.0 / elapsedMillis;
+        if (blockedMillis >= elapsedMillis * NETWORK_BOUND_SHARE) {
+            // Believe bad news at once, good news gradually
+            throughputBytesPerSecond = throughputBytesPerSecond < 0 || rate < throughputBytesPerSecond
+                    ? rate
+                    : throughputBytesPerSecond + ALPHA * (rate - throughputBytesPerSecond);
+        } else {
+            double guess = rate * PROBE_FACTOR;
+            throughputBytesPerSecond = throughputBytesPerSecond < 0
+                    ? guess
+                    : throughputBytesPerSecond + ALPHA * (guess - throughputBytesPerSecond);
+        }
+    }
+
+    // Time from the end of a clip until its transcription arrived.
+    public synchronized void recordTranscriptionLatency(long millis) {
+        transcriptionMillis = transcriptionMillis < 0
+                ? millis
+                : transcriptionMillis + ALPHA * (millis - transcriptionMillis);
+    }
+
+    // The estimates behind the choice, for the per-clip log line.
+    public synchronized String describe() {
+        return String.format(Locale.US, "upload %s, transcription %s",
+                throughputBytesPerSecond < 0 ? "unmeasured" : String.format(Locale.US, "%.1f KB/s", throughputBytesPerSecond / 1024),
+                transcriptionMillis < 0 ? "unmeasured" : String.format(Locale.US, "%d ms", Math.round(transcriptionMillis)));
+    }
+
+    private static int indexOf(Profile profile) {
+        for (int i = 0; i < PROFILES.length; i++) {
+            if (PROFILES[i] == profile) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(profile.name);
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.app;
+
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Sink;
+import okio.Source;
+
+public class GzipCodec implements CompressionCodec {
+
+    @Override
+    public String encoding() {
+        return "gzip";
+    }
+
+    @Override
+    public Sink compress(Sink sink) {
+        return new GzipSink(sink);
+    }
+
+    @Override
+    public Source decompress(Source source) {
+        return new GzipSource(source);
+    }
+}
@@ -1,16 +1,25 @@
 package com.example.app;
 
 import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.Header;
-import retrofit2.http.Headers;
 import retrofit2.http.POST;
+import retrofit2.http.Tag;
 
 public interface HuggingFaceApiService {
-    @Headers("Content-Type: audio/flac")
+    // Content-Type comes from the body (AdtsAacEncoder.CONTENT_TYPE)
     @POST("models/openai/whisper-large-v3")
     Call<WhisperResponse> transcribeAudio(
+            @Header("Authorization") String authorization,
+            @Body RequestBody audioData,
+            @Tag TurnTracer.Trace trace
+    );
+
+    // Same model, separate method so warm-ups are counted apart from real transcriptions
+    @POST("models/openai/whisper-large-v3")
+    Call<ResponseBody> warmUp(
             @Header("Authorization") String authorization,
             @Body RequestBody audioData
     );
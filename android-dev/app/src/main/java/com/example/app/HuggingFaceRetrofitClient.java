@@ -1,28 +1,120 @@
 package com.example.app;
 
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.SocketFactory;
+
+import okhttp3.ConnectionPool;
 import okhttp3.OkHttpClient;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
-import java.util.concurrent.TimeUnit;
 
 public class HuggingFaceRetrofitClient {
-    private static final String HF_BASE_URL = "https://api-inference.huggingface.co/";
-    private static Retrofit retrofit = null;
+    static final String HF_BASE_URL = "https://api-inference.huggingface.co/";
+    private static volatile OkHttpClient httpClient = null;
+    private static volatile HuggingFaceApiService apiService = null;
+    private static volatile TranscriptionClient transcriptionClient = null;
 
     public static HuggingFaceApiService getApiService() {
-        if (retrofit == null) {
-            OkHttpClient okHttpClient = new OkHttpClient.Builder()
-                    .connectTimeout(60, TimeUnit.SECONDS)
-                    .readTimeout(60, TimeUnit.SECONDS)
-                    .writeTimeout(60, TimeUnit.SECONDS)
-                    .build();
-
-            retrofit = new Retrofit.Builder()
-                    .baseUrl(HF_BASE_URL)
-                    .client(okHttpClient)
-                    .addConverterFactory(GsonConverterFactory.create())
-                    .build();
-        }
-        return retrofit.create(HuggingFaceApiService.class);
+        HuggingFaceApiService service = apiService;
+        if (service == null) {
+            synchronized (HuggingFaceRetrofitClient.class) {
+                service = apiService;
+                if (service == null) {
+                    Retrofit retrofit = new Retrofit.Builder()
+                            .baseUrl(HF_BASE_URL)
+                            .client(getHttpClient())
+                            .addConverterFactory(GsonConverterFactory.create(NetworkCore.getGson()))
+                            .build();
+                    service = retrofit.create(HuggingFaceApiService.class);
+                    apiService = service;
+                }
+            }
+        }
+        return service;
+    }
+
+    // Small send buffers, so a streamed upload that outpaces the link blocks in the body and
+    // StreamingAudioBody can measure it. The pool matches connections by host, not by socket
+    // factory, so this client keeps a pool of its own: in NetworkCore's, an upload could reuse a
+    // connection the shared client opened with default buffers. For the same reason, warm the
+    // host up through this client (ConnectionPrewarmer.prewarm(getHttpClient(), HF_BASE_URL)).
+    public static OkHttpClient getHttpClient() {
+        OkHttpClient client = httpClient;
+        if (client == null) {
+            synchronized (HuggingFaceRetrofitClient.class) {
+                client = httpClient;
+                if (client == null) {
+                    client = newHttpClient(NetworkCore.getHttpClient());
+                    httpClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    // Shares 'base's dispatcher, interceptors and listeners, but not its connections.
+    static OkHttpClient newHttpClient(OkHttpClient base) {
+        return base.newBuilder()
+                .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+                .socketFactory(new SmallSendBufferSocketFactory())
+                .build();
+    }
+
+    public static TranscriptionClient getTranscriptionClient() {
+        TranscriptionClient client = transcriptionClient;
+        if (client == null) {
+            synchronized (HuggingFaceRetrofitClient.class) {
+                client = transcriptionClient;
+                if (client == null) {
+                    Handler mainHandler = new Handler(Looper.getMainLooper());
+                    client = new TranscriptionClient(getApiService(), NetworkCore.getGson(),
+                            "Bearer " + BuildConfig.HUGGING_FACE_API_KEY, mainHandler::post);
+                    transcriptionClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    // Plain sockets with SO_SNDBUF set to StreamingAudioBody.SEND_BUFFER_BYTES before connecting.
+    private static class SmallSendBufferSocketFactory extends SocketFactory {
+        private final SocketFactory delegate = SocketFactory.getDefault();
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return configure(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return configure(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return configure(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return configure(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return configure(delegate.createSocket(address, port, localAddress, localPort));
+        }
+
+        private static Socket configure(Socket socket) throws IOException {
+            socket.setSendBufferSize(StreamingAudioBody.SEND_BUFFER_BYTES);
+            return socket;
+        }
     }
-}
\ No newline at end of file
+}
@@ -17,15 +17,23 @@ import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.navigation.NavigationView;
 import java.util.ArrayList;
 import java.util.List;
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
 
 public class LibraryActivity extends AppCompatActivity {
 
     private RecyclerView recyclerView;
     private StoryAdapter storyAdapter;
     private ApiService apiService;
+    private StoryRepository storyRepository;
+
+    // Paging state: the library is loaded a page at a time as the list nears its end
+    private static final int PREFETCH_DISTANCE = 10;
+    // Covers of this many rows below the viewport are decoded ahead of time
+    private static final int COVER_PREFETCH_ROWS = 6;
+    private int coversPrefetchedTo = -1;
+    private int lastLoadedId = 0;
+    private boolean loadingPage = false;
+    private boolean hasMorePages = true;
+    private boolean pagingFailed = false;
     private SessionManager sessionManager;
     private DrawerLayout drawerLayout;
     private ActionBarDrawerToggle toggle;
@@ -37,6 +45,7 @@ public class LibraryActivity extends AppCompatActivity {
 
         apiService = RetrofitClient.getApiService();
         sessionManager = new SessionManager(getApplicationContext());
+        storyRepository = StoryRepository.getInstance(this);
 
         Toolbar toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
@@ -53,9 +62,18 @@ public class LibraryActivity extends AppCompatActivity {
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
 
         storyAdapter = new StoryAdapter(this, new ArrayList<>(), story -> {
-            fetchStoryDetailsAndOpenViewer(story.id);
+            fetchStoryDetailsAndOpenViewer(story);
         });
         recyclerView.setAdapter(storyAdapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView view, int dx, int dy) {
+                if (dy > 0) {
+                    maybeLoadNextPage();
+                }
+                prefetchCovers();
+            }
+        });
 
         FloatingActionButton fab = findViewById(R.id.fab_new_story);
         fab.setOnClickListener(v -> {
@@ -94,20 +112,91 @@ public class LibraryActivity extends AppCompatActivity {
     }
 
     private void fetchStories() {
-        Call<List<Story>> call = apiService.readStories();
+        pagingFailed = false;
+        if (storyAdapter.getItemCount() == 0) {
+            loadNextPage();
+        } else {
+            maybeLoadNextPage();
+        }
+        // Only stories changed since the last sync are downloaded
+        storyRepository.syncChanges(new StoryRepository.LibraryListener() {
+            @Override
+            public void onChanged(List<Story> summaries) {
+                // Stories further down arrive with their page
+                List<Story> loaded = new ArrayList<>(summaries.size());
+                for (Story story : summaries) {
+                    if (story.id <= lastLoadedId || !hasMorePages) {
+                        loaded.add(story);
+                    }
+                }
+                storyAdapter.upsertStories(loaded);
+            }
+
+            @Override
+            public void onRemoved(List<Integer> storyIds) {
+                storyAdapter.removeStories(storyIds);
+            }
 
-        call.enqueue(new Callback<List<Story>>() {
             @Override
-            public void onResponse(Call<List<Story>> call, Response<List<Story>> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    storyAdapter.setStories(response.body());
-                } else {
-                    Toast.makeText(LibraryActivity.this, "Failed to load stories.", Toast.LENGTH_SHORT).show();
+            public void onError(Throwable t) {
+                Log.e("LibraryActivity", "Error syncing stories", t);
+            }
+        });
+    }
+
+    private void prefetchCovers() {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        if (layoutManager == null) {
+            return;
+        }
+        int lastVisible = layoutManager.findLastVisibleItemPosition();
+        if (lastVisible == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int from = Math.max(lastVisible + 1, coversPrefetchedTo + 1);
+        int to = lastVisible + COVER_PREFETCH_ROWS;
+        if (from <= to) {
+            storyAdapter.prefetchCovers(from, to - from + 1);
+            coversPrefetchedTo = Math.min(to, storyAdapter.getItemCount() - 1);
+        }
+    }
+
+    // Loads the next page once the user scrolls within PREFETCH_DISTANCE rows of the end
+    private void maybeLoadNextPage() {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        if (layoutManager != null
+                && layoutManager.findLastVisibleItemPosition() >= storyAdapter.getItemCount() - PREFETCH_DISTANCE) {
+            loadNextPage();
+        }
+    }
+
+    private void loadNextPage() {
+        if (loadingPage || !hasMorePages || pagingFailed) {
+            return;
+        }
+        loadingPage = true;
+        storyRepository.loadLibraryPage(lastLoadedId, new StoryRepository.PageCallback() {
+            @Override
+            public void onPage(List<Story> summaries, boolean hasMore) {
+                loadingPage = false;
+                hasMorePages = hasMore;
+                if (summaries.isEmpty()) {
+                    recyclerView.post(LibraryActivity.this::maybeLoadNextPage);
+                    return;
                 }
+                lastLoadedId = Math.max(lastLoadedId, summaries.get(summaries.size() - 1).id);
+                // The first pages may not fill the screen yet. The adapter diffs off the main
+                // thread, so check only once the page is actually on screen.
+                storyAdapter.upsertStories(summaries, () -> recyclerView.post(() -> {
+                    maybeLoadNextPage();
+                    prefetchCovers();
+                }));
             }
 
             @Override
-            public void onFailure(Call<List<Story>> call, Throwable t) {
+            public void onError(Throwable t) {
+                // Stop paging until the next onResume rather than retrying in a loop
+                pagingFailed = true;
                 Log.e("LibraryActivity", "Error fetching stories", t);
                 Toast.makeText(LibraryActivity.this, "Network error. Could not fetch stories.", Toast.LENGTH_SHORT).show();
             }
@@ -115,14 +204,17 @@ public class LibraryActivity extends AppCompatActivity {
     }
 
 
-    private void fetchStoryDetailsAndOpenViewer(int storyId) {
+    private void fetchStoryDetailsAndOpenViewer(Story story) {
         Intent intent = new Intent(LibraryActivity.this, StoryViewerActivity.class);
-        intent.putExtra("STORY_ID", storyId);
+        intent.putExtra("STORY_ID", story.id);
+        // Lets the viewer show the cached cover before the story itself has loaded
+        intent.putExtra("COVER_URL", story.cover_image_url);
         startActivity(intent);
     }
 
     private void logoutUser() {
         sessionManager.clearAuthToken();
+        storyRepository.clear();
         Intent intent = new Intent(LibraryActivity.this, LoginActivity.class);
         intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
         startActivity(intent);
@@ -134,4 +226,10 @@ public class LibraryActivity extends AppCompatActivity {
         // Fetch stories every time the activity resumes
         fetchStories();
     }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        storyRepository.cancelSync();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,92 @@
+package com.example.app;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Response;
+
+// Reads one page of api/stories/summaries with a JsonReader straight into StoryDatabase, without
+// building an intermediate response object. Pages hold summaries only (no chapters) and are
+// bounded by the page size, so memory stays flat however large the library is.
+// Runs on the caller's thread (StoryRepository's sync executor).
+public class LibraryIngestor {
+
+    public static final class Page {
+        // The summaries that were stored, in server order.
+        public final List<Story> stories;
+        // Cursor for the next page, or null if this was the last one.
+        public final Integer nextCursor;
+        // Pass back as updated_since on the next sync.
+        public final String syncTime;
+        // Total number of the user's stories on the server, or -1 if not sent.
+        public final int serverStoryCount;
+
+        Page(List<Story> stories, Integer nextCursor, String syncTime, int serverStoryCount) {
+            this.stories = stories;
+            this.nextCursor = nextCursor;
+            this.syncTime = syncTime;
+            this.serverStoryCount = serverStoryCount;
+        }
+    }
+
+    // With 'onlyExisting', summaries of stories we don't have yet are not stored (see
+    // StoryDatabase.writeStorySummaries).
+    public static Page ingestPage(Call<ResponseBody> call, StoryDatabase db, boolean onlyExisting) throws IOException {
+        Response<ResponseBody> response = call.execute();
+        if (!response.isSuccessful() || response.body() == null) {
+            throw new IOException("Library API Error: " + response.code());
+        }
+        List<Story> summaries = new ArrayList<>();
+        Integer nextCursor = null;
+        try (ResponseBody body = response.body();
+             JsonReader reader = new JsonReader(body.charStream())) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "stories":
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            Story story = WireTypeAdapters.STORY.read(reader);
+                            if (story != null) {
+                                story.chapters = null;
+                                summaries.add(story);
+                            }
+                        }
+                        reader.endArray();
+                        break;
+                    case "next_cursor":
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                        } else {
+                            nextCursor = reader.nextInt();
+                        }
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        }
+        List<Story> stored = db.writeStorySummaries(summaries, onlyExisting);
+        return new Page(stored, nextCursor, response.headers().get("X-Sync-Time"),
+                parseCount(response.headers().get("X-Story-Count")));
+    }
+
+    private static int parseCount(String header) {
+        if (header == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(header.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -1,15 +1,11 @@
 package com.example.app;
 
-import android.os.Handler;
-import android.os.Looper;
 import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
-import android.media.MediaRecorder;
 import android.os.Bundle;
 import android.text.Spannable;
-import android.text.SpannableStringBuilder;
 import android.text.style.ForegroundColorSpan;
 import android.util.Log;
 import android.view.Menu;
@@ -30,31 +26,15 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.app.BuildConfig;
 
-import java.io.File;
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import okhttp3.MediaType;
 import okhttp3.RequestBody;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
-import android.os.Environment;
-import com.itextpdf.text.Document;
-import com.itextpdf.text.Paragraph;
-import com.itextpdf.text.pdf.PdfWriter;
-import java.io.FileOutputStream;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-import android.net.Uri;
-import androidx.core.content.FileProvider;
-import com.itextpdf.text.Font;
-import com.itextpdf.text.Image;
-import java.io.InputStream;
-import java.net.URL;
-import android.os.StrictMode;
 import android.view.Menu;
 import android.view.MenuItem;
 
@@ -64,14 +44,17 @@ public class MainActivity extends AppCompatActivity {
     private String genre;
 
     // --- UI elements for the canvas and chat ---
-    private TextView storyTextView;
+    private RecyclerView storyRecyclerView;
     private RecyclerView chatRecyclerView;
     private EditText userInputEditText;
     private Button sendButton;
     private ImageButton recordButton;
 
     // --- Data sources for the two panels ---
-    private SpannableStringBuilder storyBuilder;
+    // The story text and chapter index; the canvas shows it as recycled rows (StorySegmentAdapter)
+    private StoryDocument storyDocument;
+    private StorySegmentAdapter storyAdapter;
+    private final StoryContextManager storyContextManager = new StoryContextManager();
     private List<StoryElement> chatElements = new ArrayList<>();
     private StoryCanvasAdapter chatAdapter;
 
@@ -79,11 +62,16 @@ public class MainActivity extends AppCompatActivity {
     private static final int REQUEST_RECORD_AUDIO_PERMISSION = 200;
     private boolean permissionToRecordAccepted = false;
     private final String[] permissions = {Manifest.permission.RECORD_AUDIO};
-    private MediaRecorder recorder = null;
-    private String fileName = null;
+    private final VoiceCapture voiceCapture = new VoiceCapture();
     private SessionManager sessionManager;
 
-    private Handler typewriterHandler = new Handler(Looper.getMainLooper());
+    private TypewriterRenderer typewriter;
+
+    // Turn tracing: the trace of a voice turn starts when recording starts; a turn whose text is
+    // still being typed out is closed when the typewriter runs dry.
+    private TurnTracer.Trace recordingTrace;
+    private TurnTracer.Trace renderingTrace;
+    private long renderStart;
 
 
 
@@ -93,6 +81,9 @@ public class MainActivity extends AppCompatActivity {
         if (requestCode == REQUEST_RECORD_AUDIO_PERMISSION) {
             permissionToRecordAccepted = grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED;
         }
+        if (permissionToRecordAccepted) {
+            voiceCapture.prepare();
+        }
         if (!permissionToRecordAccepted) {
             Toast.makeText(this, "Microphone permission is required for voice input.", Toast.LENGTH_LONG).show();
         }
@@ -115,14 +106,20 @@ public class MainActivity extends AppCompatActivity {
         // Find UI Views
         Toolbar toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
-        storyTextView = findViewById(R.id.storyTextView);
+        storyRecyclerView = findViewById(R.id.storyRecyclerView);
         chatRecyclerView = findViewById(R.id.chatRecyclerView);
         userInputEditText = findViewById(R.id.userInputEditText);
         sendButton = findViewById(R.id.sendButton);
         recordButton = findViewById(R.id.recordButton);
 
         // Initialize Story Canvas
-        storyBuilder = new SpannableStringBuilder();
+        storyDocument = new StoryDocument();
+        storyAdapter = new StorySegmentAdapter();
+        storyRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        storyRecyclerView.setItemAnimator(null);
+        storyRecyclerView.setAdapter(storyAdapter);
+        typewriter = new TypewriterRenderer(new StoryCanvasWriter(), new ChoreographerFrameScheduler());
+        typewriter.setOnIdleListener(this::finishRenderingTrace);
         appendStoryParagraph("The " + genre + " story begins...\n\n");
 
         // Initialize Chat Log
@@ -152,6 +149,33 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        typewriter.resume();
+        // The record button is on screen: make sure the transcription host is connected and the
+        // microphone is open, so a press starts capturing at once
+        recordButton.post(() -> ConnectionPrewarmer.prewarm(HuggingFaceRetrofitClient.getHttpClient(),
+                HuggingFaceRetrofitClient.HF_BASE_URL));
+        if (BuildConfig.HUGGING_FACE_API_KEY != null && !BuildConfig.HUGGING_FACE_API_KEY.isEmpty()) {
+            // A serverless model may have been unloaded; have it load while the user thinks
+            HuggingFaceRetrofitClient.getTranscriptionClient().warmUp();
+        }
+        if (permissionToRecordAccepted) {
+            voiceCapture.prepare();
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // No frames while we're in the background; the rest is revealed when we come back.
+        typewriter.pause();
+        // The button's ACTION_UP may never come; end the clip with what was said so far
+        stopRecording();
+        voiceCapture.release();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main_menu, menu);
@@ -173,6 +197,7 @@ public class MainActivity extends AppCompatActivity {
 
     private void logoutUser() {
         sessionManager.clearAuthToken();
+        StoryRepository.getInstance(this).clear();
         Intent intent = new Intent(MainActivity.this, LoginActivity.class);
         // Flags to clear the back stack and prevent user from returning to MainActivity
         intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
@@ -182,22 +207,79 @@ public class MainActivity extends AppCompatActivity {
     private void handleTextSend() {
         String inputText = userInputEditText.getText().toString().trim();
         if (!inputText.isEmpty()) {
+            TurnTracer.Trace trace = TurnTracer.beginTurn();
             addMessageToChat(inputText, StoryElement.TYPE_USER);
-            sendStoryContinuationRequest(inputText);
+            sendStoryContinuationRequest(inputText, trace);
             userInputEditText.setText("");
         }
     }
 
     // --- Helper methods for UI updates ---
+    // Writes story text to both the full text and the canvas rows
+    private class StoryCanvasWriter implements Appendable {
+        @Override
+        public Appendable append(CharSequence text) {
+            return append(text, 0, text.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence text, int start, int end) {
+            storyDocument.append(text, start, end);
+            storyAdapter.append(text, start, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            storyDocument.append(String.valueOf(c));
+            storyAdapter.append(c);
+            return this;
+        }
+    }
+
     private void appendStoryParagraph(String text) {
-        storyBuilder.append(text);
-        storyTextView.setText(storyBuilder);
+        typewriter.flush();
+        storyDocument.append(text);
+        storyAdapter.append(text);
+    }
+
+    private void replaceStoryText(StoryResponse storyResponse) {
+        typewriter.flush();
+        // The AI only saw the text from the context window onwards, so only that part is rewritten.
+        int start = Math.min(storyContextManager.getWindowStart(), storyDocument.length());
+        String newStoryText = storyResponse.storyText;
+
+        if (storyResponse.edits != null && storyResponse.baseHash != null) {
+            String window = storyDocument.snapshot().substring(start, storyDocument.length());
+            if (storyResponse.baseHash.equals(ContentHash.of(window))) {
+                applyStoryEdits(start, storyResponse.edits);
+                return;
+            }
+            // The story changed since the request was sent; rebuild the rewrite from what we sent.
+            newStoryText = StoryEdit.applyAll(storyContextManager.getLastWindow(), storyResponse.edits);
+        }
+        if (newStoryText == null || newStoryText.isEmpty()) {
+            return;
+        }
+        storyDocument.replace(start, storyDocument.length(), newStoryText);
+        storyContextManager.invalidateFrom(start);
+        storyAdapter.rebuildFrom(storyDocument.snapshot(), start);
     }
 
-    private void replaceStoryText(String newFullStory) {
-        storyBuilder.clear();
-        storyBuilder.append(newFullStory);
-        storyTextView.setText(storyBuilder);
+    // Applies the edits in place, last first so earlier offsets stay valid, and only rebuilds the
+    // canvas rows from the first edited paragraph on.
+    private void applyStoryEdits(int windowStart, List<StoryEdit> edits) {
+        if (edits.isEmpty()) {
+            return;
+        }
+        int firstEdit = Integer.MAX_VALUE;
+        for (int i = edits.size() - 1; i >= 0; i--) {
+            StoryEdit edit = edits.get(i);
+            storyDocument.replace(windowStart + edit.start, windowStart + edit.end, edit.text == null ? "" : edit.text);
+            firstEdit = Math.min(firstEdit, windowStart + edit.start);
+        }
+        storyContextManager.invalidateFrom(firstEdit);
+        storyAdapter.rebuildFrom(storyDocument.snapshot(), firstEdit);
     }
 
     private void addMessageToChat(String text, int type) {
@@ -208,156 +290,278 @@ public class MainActivity extends AppCompatActivity {
 
     private void addChapterTitle(String title) {
         // Add to story canvas
-        storyBuilder.append("\n\n--- ").append(title).append(" ---\n\n");
-        storyTextView.setText(storyBuilder);
+        typewriter.flush();
+        storyDocument.startChapter(title);
+        storyAdapter.addChapter(title);
 
         // Add to chat log
         addMessageToChat(title, StoryElement.TYPE_CHAPTER);
     }
     // --- Story Generation Logic ---
-    private void sendStoryContinuationRequest(String userInput) {
-        String currentStory = storyBuilder.toString();
-        StoryRequest request = new StoryRequest(aiName, genre, currentStory, userInput);
-        ApiService apiService = RetrofitClient.getApiService();
-        Call<StoryResponse> call = apiService.continueStory(request);
-        call.enqueue(new Callback<StoryResponse>() {
+    private void sendStoryContinuationRequest(String userInput, TurnTracer.Trace trace) {
+        // A previous turn still typing out ends here; its remaining text is written at once
+        finishRenderingTrace();
+        typewriter.flush();
+        // Only a bounded window + summary is sent, so the request size stays flat as the story grows
+        long buildStart = TurnTracer.now();
+        StoryRequest request = storyContextManager.buildRequest(aiName, genre, storyDocument, userInput);
+        TurnTracer.spanUntilNow(trace, "request.build", buildStart);
+        StoryStreamClient.continueStory(request, trace, new StoryStreamClient.Listener() {
+            private boolean chapterAdded = false;
+            private boolean streamingIntoStory = false;
+
             @Override
-            public void onResponse(@NonNull Call<StoryResponse> call, @NonNull Response<StoryResponse> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    StoryResponse storyResponse = response.body();
-                    runOnUiThread(() -> {
-                        // Check for a new chapter title FIRST
-                        if (storyResponse.newChapterTitle != null && !storyResponse.newChapterTitle.isEmpty()) {
-                            addChapterTitle(storyResponse.newChapterTitle);
-                        }
-
-                        // Handle the AI's action
-                        if ("REPLACE".equals(storyResponse.action)) {
-                            replaceStoryText(storyResponse.storyText);
-                        } else if ("APPEND".equals(storyResponse.action)) {
-                            animateTypewriter(storyResponse.storyText);
-                        }
-                        // If the action is "REFUSE" or "CHAT", we do nothing to the story canvas.
-
-                        // Always add the AI's conversational message to the chat
-                        addMessageToChat(storyResponse.chatResponse, StoryElement.TYPE_AI);
-                    });
+            public void onStart(String action, String newChapterTitle) {
+                // Check for a new chapter title FIRST
+                if (newChapterTitle != null && !newChapterTitle.isEmpty()) {
+                    addChapterTitle(newChapterTitle);
+                    chapterAdded = true;
+                }
+                // APPEND and CHAPTER text goes straight onto the canvas as it arrives.
+                // REPLACE is applied once the whole rewrite is in.
+                streamingIntoStory = "APPEND".equals(action) || "CHAPTER".equals(action);
+                if (streamingIntoStory) {
+                    renderStart = TurnTracer.now();
+                    typewriter.enqueue("\n\n");
+                }
+            }
+
+            @Override
+            public void onText(String fragment) {
+                if (streamingIntoStory) {
+                    typewriter.enqueue(fragment);
+                }
+            }
+
+            @Override
+            public void onEnd(StoryResponse storyResponse) {
+                if (!chapterAdded && storyResponse.newChapterTitle != null && !storyResponse.newChapterTitle.isEmpty()) {
+                    addChapterTitle(storyResponse.newChapterTitle);
+                }
+
+                // Handle the AI's action
+                if ("REPLACE".equals(storyResponse.action)) {
+                    replaceStoryText(storyResponse);
+                }
+                // If the action is "REFUSE" or "CHAT", we do nothing to the story canvas.
+
+                // Always add the AI's conversational message to the chat
+                addMessageToChat(storyResponse.chatResponse, StoryElement.TYPE_AI);
+
+                // The turn is done once the typewriter has shown everything
+                if (streamingIntoStory && !typewriter.isIdle()) {
+                    renderingTrace = trace;
                 } else {
-                    Log.e("MainActivity", "Story API Error: " + response.code());
-                    Toast.makeText(MainActivity.this, "AI failed to respond.", Toast.LENGTH_SHORT).show();
+                    if (streamingIntoStory) {
+                        TurnTracer.spanUntilNow(trace, "ui.render", renderStart);
+                    }
+                    TurnTracer.endTurn(trace);
                 }
             }
+
             @Override
-            public void onFailure(@NonNull Call<StoryResponse> call, @NonNull Throwable t) {
+            public void onError(Throwable t) {
                 Log.e("MainActivity", "Story API Failure", t);
                 Toast.makeText(MainActivity.this, "Network error. AI unreachable.", Toast.LENGTH_SHORT).show();
-                runOnUiThread(() -> {
-                    addMessageToChat("This is a test response from the AI.", StoryElement.TYPE_AI);
-                    animateTypewriter("This is a test paragraph to see the typewriter effect working.");
-                });
+                addMessageToChat("This is a test response from the AI.", StoryElement.TYPE_AI);
+                animateTypewriter("This is a test paragraph to see the typewriter effect working.");
+                TurnTracer.endTurn(trace);
             }
         });
     }
 
+    private void finishRenderingTrace() {
+        if (renderingTrace != null) {
+            TurnTracer.spanUntilNow(renderingTrace, "ui.render", renderStart);
+            TurnTracer.endTurn(renderingTrace);
+            renderingTrace = null;
+        }
+    }
+
     private void animateTypewriter(final String text) {
-        storyBuilder.append("\n\n");
-        final int[] index = {0};
-        typewriterHandler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                if (index[0] < text.length()) {
-                    storyBuilder.append(text.charAt(index[0]));
-                    storyTextView.setText(storyBuilder);
-                    index[0]++;
-                    typewriterHandler.postDelayed(this, 5);
-                }
-            }
-        }, 20);
+        typewriter.enqueue("\n\n");
+        typewriter.enqueue(text);
     }
 
     // --- Audio Recording & Transcription ---
+    // Only speech is sent: VoiceCapture drops silence and splits the clip at pauses, and each
+    // segment is uploaded while it is spoken. When the button is released only the
+    // transcription of the last segment is left to wait for.
     private void startRecording() {
-        fileName = getExternalCacheDir().getAbsolutePath() + "/whisprr_audio.mp3";
-        recorder = new MediaRecorder();
-        recorder.setAudioSource(MediaRecorder.AudioSource.MIC);
-        recorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
-        recorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
-        recorder.setOutputFile(fileName);
-
+        if (BuildConfig.HUGGING_FACE_API_KEY == null || BuildConfig.HUGGING_FACE_API_KEY.isEmpty()) {
+            Toast.makeText(this, "Hugging Face API Key not found.", Toast.LENGTH_LONG).show();
+            return;
+        }
+        if (voiceCapture.isCapturing()) {
+            return;
+        }
+        recordingTrace = TurnTracer.beginTurn();
         try {
-            recorder.prepare();
-            recorder.start();
+            voiceCapture.start(new VoiceClip(recordingTrace));
             Toast.makeText(this, "Recording...", Toast.LENGTH_SHORT).show();
-        } catch (IOException e) {
-            Log.e("MainActivity", "startRecording prepare() failed", e);
+        } catch (RuntimeException e) {
+            Log.e("MainActivity", "startRecording failed", e);
+            TurnTracer.endTurn(recordingTrace);
+            recordingTrace = null;
         }
     }
 
     private void stopRecording() {
-        if (recorder != null) {
-            try {
-                recorder.stop();
-                recorder.release();
-                recorder = null;
-                Toast.makeText(this, "Transcribing...", Toast.LENGTH_SHORT).show();
-                transcribeAudioFile(fileName);
-            } catch (RuntimeException e) {
-                Log.e("MainActivity", "stopRecording failed", e);
-            }
+        if (!voiceCapture.isCapturing()) {
+            return;
+        }
+        voiceCapture.stop();
+        TurnTracer.Trace trace = recordingTrace;
+        recordingTrace = null;
+        if (trace != null) {
+            TurnTracer.spanUntilNow(trace, "input.capture", trace.startNanos);
         }
     }
 
-    private void transcribeAudioFile(String filePath) {
-        File audioFile = new File(filePath);
-        String authToken = "Bearer " + BuildConfig.HUGGING_FACE_API_KEY;
-
-        if (BuildConfig.HUGGING_FACE_API_KEY == null || BuildConfig.HUGGING_FACE_API_KEY.isEmpty()) {
-            Toast.makeText(this, "Hugging Face API Key not found.", Toast.LENGTH_LONG).show();
-            return;
+    // One press of the record button: transcribes its segments and, once capture has
+    // finished and every segment is back, sends their text in order as one message.
+    private class VoiceClip implements VoiceCapture.Listener {
+        private final TurnTracer.Trace trace;
+        private final List<String> transcripts = new ArrayList<>();
+        private final List<TranscriptionClient.Transcription> calls = new ArrayList<>();
+        private int segmentCount = -1;
+        private int transcribed;
+        private boolean failed;
+        private boolean toldModelLoading;
+        private long finishedAtNanos;
+
+        VoiceClip(TurnTracer.Trace trace) {
+            this.trace = trace;
         }
 
-        RequestBody audioRequestBody = RequestBody.create(MediaType.parse("audio/mp3"), audioFile);
-        HuggingFaceApiService hfApiService = HuggingFaceRetrofitClient.getApiService();
-
-        Call<WhisperResponse> call = hfApiService.transcribeAudio(authToken, audioRequestBody);
-        call.enqueue(new Callback<WhisperResponse>() {
-            @Override
-            public void onResponse(@NonNull Call<WhisperResponse> call, @NonNull Response<WhisperResponse> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    String transcribedText = response.body().text;
-                    runOnUiThread(() -> {
-                        addMessageToChat(transcribedText, StoryElement.TYPE_USER);
-                        sendStoryContinuationRequest(transcribedText);
-                    });
-                } else {
+        @Override
+        public void onSegment(int index, RequestBody audio) {
+            if (failed) {
+                // Not worth sending, but it must be closed, or capture blocks writing into it
+                if (audio instanceof Closeable) {
                     try {
-                        Log.e("MainActivity", "HF API Error: " + response.code() + " - " + response.errorBody().string());
+                        ((Closeable) audio).close();
                     } catch (IOException e) {
-                        Log.e("MainActivity", "HF API Error: " + response.code());
+                        Log.w("MainActivity", "Could not close segment", e);
                     }
-                    Toast.makeText(MainActivity.this, "Transcription failed.", Toast.LENGTH_SHORT).show();
+                }
+                return;
+            }
+            transcripts.add(null);
+            calls.add(transcribeAudio(audio, trace, this, index));
+        }
+
+        @Override
+        public void onFinished(int segmentCount) {
+            this.segmentCount = segmentCount;
+            finishedAtNanos = System.nanoTime();
+            if (segmentCount == 0) {
+                Toast.makeText(MainActivity.this, "No speech detected.", Toast.LENGTH_SHORT).show();
+                TurnTracer.endTurn(trace);
+                return;
+            }
+            if (!failed) {
+                Toast.makeText(MainActivity.this, "Transcribing...", Toast.LENGTH_SHORT).show();
+                maybeSend();
+            }
+        }
+
+        @Override
+        public void onError(Exception e) {
+            Toast.makeText(MainActivity.this, "Recording failed.", Toast.LENGTH_SHORT).show();
+            fail();
+        }
+
+        void onTranscribed(int index, String text) {
+            if (failed) {
+                return;
+            }
+            transcripts.set(index, text);
+            transcribed++;
+            maybeSend();
+        }
+
+        // Any failed segment fails the clip; the rest are not worth waiting for.
+        void fail() {
+            if (failed) {
+                return;
+            }
+            failed = true;
+            for (TranscriptionClient.Transcription call : calls) {
+                call.cancel();
+            }
+            TurnTracer.endTurn(trace);
+        }
+
+        private void maybeSend() {
+            if (transcribed < segmentCount) {
+                return;
+            }
+            // How long the user waited after speaking; feeds the next clip's encoding choice
+            EncodingPolicy.getInstance().recordTranscriptionLatency((System.nanoTime() - finishedAtNanos) / 1_000_000);
+            StringBuilder text = new StringBuilder();
+            for (String transcript : transcripts) {
+                if (transcript != null && !transcript.trim().isEmpty()) {
+                    if (text.length() > 0) {
+                        text.append(' ');
+                    }
+                    text.append(transcript.trim());
+                }
+            }
+            if (text.length() == 0) {
+                Toast.makeText(MainActivity.this, "No speech detected.", Toast.LENGTH_SHORT).show();
+                TurnTracer.endTurn(trace);
+                return;
+            }
+            addMessageToChat(text.toString(), StoryElement.TYPE_USER);
+            sendStoryContinuationRequest(text.toString(), trace);
+        }
+    }
+
+    private TranscriptionClient.Transcription transcribeAudio(RequestBody audioBody, TurnTracer.Trace trace, VoiceClip clip, int index) {
+        return HuggingFaceRetrofitClient.getTranscriptionClient().transcribe(audioBody, trace, new TranscriptionClient.Callback() {
+            @Override
+            public void onTranscribed(String text) {
+                clip.onTranscribed(index, text);
+            }
+
+            @Override
+            public void onModelLoading(long retryInMillis) {
+                // Once per clip; the client keeps retrying on its own
+                if (!clip.toldModelLoading) {
+                    clip.toldModelLoading = true;
+                    Toast.makeText(MainActivity.this, "The speech model is starting up, one moment...", Toast.LENGTH_LONG).show();
                 }
             }
+
             @Override
-            public void onFailure(@NonNull Call<WhisperResponse> call, @NonNull Throwable t) {
+            public void onError(Throwable t) {
                 Log.e("MainActivity", "HF API Failure", t);
-                Toast.makeText(MainActivity.this, "Transcription network failure.", Toast.LENGTH_SHORT).show();
+                if (!clip.failed) {
+                    String message = t instanceof TranscriptionClient.ServerException
+                            ? "Transcription failed." : "Transcription network failure.";
+                    Toast.makeText(MainActivity.this, message, Toast.LENGTH_SHORT).show();
+                }
+                clip.fail();
             }
         });
     }
 
     // --- Story Saving Logic ---
-    private void saveStory() {
-        String fullStoryText = storyBuilder.toString();
+    private boolean isStoryEmpty() {
+        String opening = "The " + genre + " story begins...";
+        return storyDocument.length() <= opening.length() + 2 && storyDocument.toString().trim().equals(opening);
+    }
 
-        if (fullStoryText.trim().equals("The " + genre + " story begins...")) {
+    private void saveStory() {
+        typewriter.flush();
+        if (isStoryEmpty()) {
             Toast.makeText(this, "Cannot save an empty story.", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        Chapter chapter1 = new Chapter(1, "Chapter 1", fullStoryText);
-        List<Chapter> chapters = new ArrayList<>();
-        chapters.add(chapter1);
+        StoryDocument.Snapshot snapshot = storyDocument.snapshot();
+        List<Chapter> chapters = snapshot.toChapters();
 
         FullStoryCreate storyToSave = new FullStoryCreate(
                 "My New " + genre + " Story",
@@ -374,6 +578,10 @@ public class MainActivity extends AppCompatActivity {
             public void onResponse(Call<Story> call, Response<Story> response) {
                 if (response.isSuccessful() && response.body() != null) {
                     Story savedStory = response.body();
+                    // Into the local library now, so it is there before the next sync
+                    StoryRepository.getInstance(MainActivity.this).putStory(savedStory);
+                    // Users tend to share right after saving; have the PDF ready by then
+                    PdfExporter.prepare(MainActivity.this, PdfExporter.fromSnapshot(storyToSave.title, snapshot));
                     Toast.makeText(MainActivity.this, "Story saved! Generating cover...", Toast.LENGTH_SHORT).show();
                     triggerCoverGeneration(savedStory.id);
                 } else {
@@ -396,6 +604,9 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onResponse(Call<Story> call, Response<Story> response) {
                 if (response.isSuccessful() && response.body() != null) {
+                    StoryRepository.getInstance(MainActivity.this).putStory(response.body());
+                    // Only the cover page is new; the chapters are already rendered
+                    PdfExporter.prepare(MainActivity.this, PdfExporter.fromStory(MainActivity.this, response.body()));
                     Toast.makeText(MainActivity.this, "Cover generated successfully!", Toast.LENGTH_LONG).show();
                 } else {
                     Log.e("MainActivity", "Cover Gen Error: " + response.message());
@@ -411,76 +622,13 @@ public class MainActivity extends AppCompatActivity {
         });
     }
     private void exportStoryAsPdf() {
-        // Allow network operations on the main thread for image downloading
-        // Note: In a production app, this should be done in a background thread.
-        StrictMode.ThreadPolicy policy = new StrictMode.ThreadPolicy.Builder().permitAll().build();
-        StrictMode.setThreadPolicy(policy);
-
-        String fullStoryText = storyBuilder.toString();
-        if (fullStoryText.trim().equals("The " + genre + " story begins...")) {
+        typewriter.flush();
+        if (isStoryEmpty()) {
             Toast.makeText(this, "Cannot export an empty story.", Toast.LENGTH_SHORT).show();
             return;
         }
-
-        try {
-            String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-            String fileName = "ScrybeStory_" + timeStamp + ".pdf";
-            File pdfDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS);
-
-            if (!pdfDir.exists()) {
-                pdfDir.mkdirs();
-            }
-
-            File pdfFile = new File(pdfDir, fileName);
-
-            Document document = new Document();
-            PdfWriter.getInstance(document, new FileOutputStream(pdfFile));
-            document.open();
-
-            // --- Add Cover Image ---
-            // This part needs the story object, which we don't have here.
-            // For now, we will skip adding the cover image directly to the PDF from this screen.
-            // A more advanced implementation would pass the full story object to this activity.
-
-            // --- Add Title and Chapters with Formatting ---
-            Font titleFont = new Font(Font.FontFamily.TIMES_ROMAN, 22, Font.BOLD);
-            Font chapterFont = new Font(Font.FontFamily.TIMES_ROMAN, 18, Font.BOLD);
-            Font bodyFont = new Font(Font.FontFamily.TIMES_ROMAN, 12, Font.NORMAL);
-
-            document.add(new Paragraph("My New " + genre + " Story", titleFont));
-
-            // Split the story into chapters based on our delimiter
-            String[] chapters = fullStoryText.split("\n\n--- ");
-
-            for (int i = 0; i < chapters.length; i++) {
-                String chapterContent = chapters[i];
-                if (i > 0) { // The first element is the beginning of the story
-                    String[] chapterParts = chapterContent.split(" ---\n\n");
-                    String chapterTitle = chapterParts[0];
-                    document.add(new Paragraph("\n\n" + chapterTitle, chapterFont));
-                    if (chapterParts.length > 1) {
-                        document.add(new Paragraph(chapterParts[1], bodyFont));
-                    }
-                } else {
-                    document.add(new Paragraph(chapterContent, bodyFont));
-                }
-            }
-
-            document.close();
-
-            Uri pdfUri = FileProvider.getUriForFile(this, BuildConfig.APPLICATION_ID + ".provider", pdfFile);
-
-            Intent shareIntent = new Intent(Intent.ACTION_SEND);
-            shareIntent.setType("application/pdf");
-            shareIntent.putExtra(Intent.EXTRA_STREAM, pdfUri);
-            shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-
-            startActivity(Intent.createChooser(shareIntent, "Share Story PDF"));
-
-        } catch (Exception e) {
-            Log.e("MainActivity", "Error creating or sharing PDF", e);
-            Toast.makeText(this, "Could not create or share PDF.", Toast.LENGTH_SHORT).show();
-        }
+        // The snapshot is immutable, so the export thread reads it while writing continues
+        PdfExporter.exportAndShare(this, PdfExporter.fromSnapshot("My New " + genre + " Story", storyDocument.snapshot()));
     }
 
 }
\ No newline at end of file
@@ -8,5 +8,8 @@ public class MyApplication extends Application {
         super.onCreate();
         // Initialize the RetrofitClient with the application context
         RetrofitClient.initialize(getApplicationContext());
+        // Get DNS/TCP/TLS out of the way before the first login or story request
+        ConnectionPrewarmer.prewarm(RetrofitClient.BASE_URL);
+        ConnectionPrewarmer.prewarm(HuggingFaceRetrofitClient.getHttpClient(), HuggingFaceRetrofitClient.HF_BASE_URL);
     }
 }
\ No newline at end of file
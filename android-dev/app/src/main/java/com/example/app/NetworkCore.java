@@ -0,0 +1,60 @@
+package com.example.app;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+// The one OkHttpClient (connection pool, dispatcher threads) and Gson instance for the whole
+// process. API clients derive from it with newBuilder(), which shares the pool and dispatcher,
+// so moving between screens never opens new connection pools or thread sets.
+public class NetworkCore {
+
+    private static volatile OkHttpClient httpClient;
+    private static volatile Gson gson;
+
+    public static OkHttpClient getHttpClient() {
+        OkHttpClient client = httpClient;
+        if (client == null) {
+            synchronized (NetworkCore.class) {
+                client = httpClient;
+                if (client == null) {
+                    client = new OkHttpClient.Builder()
+                            .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+                            .dispatcher(new Dispatcher())
+                            .dns(new CachingDns())
+                            .addInterceptor(NetworkMetrics.interceptor())
+                            .addNetworkInterceptor(NetworkMetrics.networkInterceptor())
+                            .eventListenerFactory(NetworkMetrics.eventListenerFactory())
+                            .connectTimeout(60, TimeUnit.SECONDS)
+                            .readTimeout(60, TimeUnit.SECONDS)
+                            .writeTimeout(60, TimeUnit.SECONDS)
+                            .build();
+                    httpClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    public static Gson getGson() {
+        Gson instance = gson;
+        if (instance == null) {
+            synchronized (NetworkCore.class) {
+                instance = gson;
+                if (instance == null) {
+                    // Wire models use the streaming adapters instead of reflection
+                    instance = new GsonBuilder()
+                            .registerTypeAdapterFactory(WireTypeAdapters.FACTORY)
+                            .create();
+                    gson = instance;
+                }
+            }
+        }
+        return instance;
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.app;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import retrofit2.Invocation;
+
+// Per-endpoint network metrics, recorded by OkHttp interceptors and an EventListener on
+// NetworkCore's shared client. Endpoints are named after the Retrofit method
+// ("ApiService.continueStory"). For each we keep latency (until the body is fully read) and
+// time-to-first-byte histograms, request/response bytes as sent and received on the wire, errors
+// and retries. Everything is lock-free counters, so recording costs a few atomic increments per
+// call.
+public class NetworkMetrics {
+
+    public static final class EndpointStats {
+        final String endpoint;
+        final LongAdder calls = new LongAdder();
+        final LongAdder attempts = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder requestBytes = new LongAdder();
+        final LongAdder responseBytes = new LongAdder();
+        // Bodies that went through CompressionInterceptor, before and after encoding.
+        final LongAdder requestRawBytes = new LongAdder();
+        final LongAdder requestEncodedBytes = new LongAdder();
+        final LongAdder responseRawBytes = new LongAdder();
+        final LongAdder responseEncodedBytes = new LongAdder();
+        final LatencyHistogram latencyMillis = new LatencyHistogram();
+        final LatencyHistogram firstByteMillis = new LatencyHistogram();
+
+        EndpointStats(String endpoint) {
+            this.endpoint = endpoint;
+        }
+    }
+
+    // What dump() and toJson() return; a copy, safe to keep around.
+    public static final class EndpointSnapshot {
+        @SerializedName("endpoint") public String endpoint;
+        @SerializedName("calls") public long calls;
+        @SerializedName("errors") public long errors;
+        @SerializedName("retries") public long retries;
+        @SerializedName("request_bytes") public long requestBytes;
+        @SerializedName("response_bytes") public long responseBytes;
+        // Raw size / encoded size of compressed bodies; 0 when none were compressed.
+        @SerializedName("request_compression_ratio") public double requestCompressionRatio;
+        @SerializedName("response_compression_ratio") public double responseCompressionRatio;
+        @SerializedName("latency_p50_ms") public long latencyP50;
+        @SerializedName("latency_p95_ms") public long latencyP95;
+        @SerializedName("latency_p99_ms") public long latencyP99;
+        @SerializedName("ttfb_p50_ms") public long firstByteP50;
+        @SerializedName("ttfb_p95_ms") public long firstByteP95;
+        @SerializedName("ttfb_p99_ms") public long firstByteP99;
+    }
+
+    private static final ConcurrentHashMap<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Method, String> endpointNames = new ConcurrentHashMap<>();
+
+    private static final Interceptor callInterceptor = NetworkMetrics::interceptCall;
+    private static final Interceptor attemptInterceptor = NetworkMetrics::interceptAttempt;
+    private static final EventListener.Factory listenerFactory = call -> {
+        String endpoint = endpointOf(call.request());
+        TurnTracer.Trace trace = call.request().tag(TurnTracer.Trace.class);
+        return trace == null ? new WireBytesListener(endpoint) : new TurnTraceEventListener(trace, endpoint);
+    };
+
+    // Application interceptor: one per logical call.
+    public static Interceptor interceptor() {
+        return callInterceptor;
+    }
+
+    // Network interceptor: once per attempt on the wire, so attempts - calls = retries.
+    public static Interceptor networkInterceptor() {
+        return attemptInterceptor;
+    }
+
+    // Counts body bytes on the wire; calls tagged with a TurnTracer.Trace are traced as well.
+    public static EventListener.Factory eventListenerFactory() {
+        return listenerFactory;
+    }
+
+    public static EndpointStats statsFor(String endpoint) {
+        EndpointStats stats = endpoints.get(endpoint);
+        return stats != null ? stats : endpoints.computeIfAbsent(endpoint, EndpointStats::new);
+    }
+
+    public static List<EndpointSnapshot> dump() {
+        List<EndpointSnapshot> result = new ArrayList<>(endpoints.size());
+        for (EndpointStats stats : endpoints.values()) {
+            EndpointSnapshot snapshot = new EndpointSnapshot();
+            snapshot.endpoint = stats.endpoint;
+            snapshot.calls = stats.calls.sum();
+            snapshot.errors = stats.errors.sum();
+            snapshot.retries = Math.max(0, stats.attempts.sum() - snapshot.calls);
+            snapshot.requestBytes = stats.requestBytes.sum();
+            snapshot.responseBytes = stats.responseBytes.sum();
+            snapshot.requestCompressionRatio = ratio(stats.requestRawBytes.sum(), stats.requestEncodedBytes.sum());
+            snapshot.responseCompressionRatio = ratio(stats.responseRawBytes.sum(), stats.responseEncodedBytes.sum());
+            snapshot.latencyP50 = stats.latencyMillis.percentile(50);
+            snapshot.latencyP95 = stats.latencyMillis.percentile(95);
+            snapshot.latencyP99 = stats.latencyMillis.percentile(99);
+            snapshot.firstByteP50 = stats.firstByteMillis.percentile(50);
+            snapshot.firstByteP95 = stats.firstByteMillis.percentile(95);
+            snapshot.firstByteP99 = stats.firstByteMillis.percentile(99);
+            result.add(snapshot);
+        }
+        Collections.sort(result, (a, b) -> a.endpoint.compareTo(b.endpoint));
+        return result;
+    }
+
+    public static String toJson() {
+        return NetworkCore.getGson().toJson(dump());
+    }
+
+    // Plain-text table for the hidden metrics section in Settings.
+    public static String format() {
+        StringBuilder sb = new StringBuilder();
+        for (EndpointSnapshot s : dump()) {
+            sb.append(s.endpoint).append('\n')
+                    .append(String.format(Locale.US, "  calls %d  errors %d  retries %d%n", s.calls, s.errors, s.retries))
+                    .append(String.format(Locale.US, "  latency p50/p95/p99 %d/%d/%d ms%n", s.latencyP50, s.latencyP95, s.latencyP99))
+                    .append(String.format(Locale.US, "  ttfb    p50/p95/p99 %d/%d/%d ms%n", s.firstByteP50, s.firstByteP95, s.firstByteP99))
+                    .append(String.format(Locale.US, "  sent %d B  received %d B%n", s.requestBytes, s.responseBytes))
+                    .append(String.format(Locale.US, "  compression up x%.1f  down x%.1f%n", s.requestCompressionRatio, s.responseCompressionRatio));
+        }
+        return sb.length() == 0 ? "No requests recorded yet." : sb.toString();
+    }
+
+    public static void recordRequestCompression(String endpoint, long rawBytes, long encodedBytes) {
+        EndpointStats stats = statsFor(endpoint);
+        stats.requestRawBytes.add(rawBytes);
+        stats.requestEncodedBytes.add(encodedBytes);
+    }
+
+    public static void recordResponseCompression(String endpoint, long rawBytes, long encodedBytes) {
+        EndpointStats stats = statsFor(endpoint);
+        stats.responseRawBytes.add(rawBytes);
+        stats.responseEncodedBytes.add(encodedBytes);
+    }
+
+    private static double ratio(long rawBytes, long encodedBytes) {
+        return encodedBytes == 0 ? 0 : (double) rawBytes / encodedBytes;
+    }
+
+    public static void reset() {
+        endpoints.clear();
+    }
+
+    static String endpointOf(Request request) {
+        Invocation invocation = request.tag(Invocation.class);
+        if (invocation != null) {
+            Method method = invocation.method();
+            String name = endpointNames.get(method);
+            if (name == null) {
+                name = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+                endpointNames.put(method, name);
+            }
+            return name;
+        }
+        return request.method() + " " + request.url().host() + request.url().encodedPath();
+    }
+
+    private static Response interceptCall(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        EndpointStats stats = statsFor(endpointOf(request));
+        stats.calls.increment();
+
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            stats.errors.increment();
+            stats.latencyMillis.record((System.nanoTime() - start) / 1_000_000);
+            throw e;
+        }
+        stats.firstByteMillis.record((System.nanoTime() - start) / 1_000_000);
+        if (!response.isSuccessful()) {
+            stats.errors.increment();
+        }
+        ResponseBody body = response.body();
+        if (body == null) {
+            stats.latencyMillis.record((System.nanoTime() - start) / 1_000_000);
+            return response;
+        }
+        return response.newBuilder().body(new MeteredResponseBody(body, stats, start)).build();
+    }
+
+    private static Response interceptAttempt(Interceptor.Chain chain) throws IOException {
+        statsFor(endpointOf(chain.request())).attempts.increment();
+        return chain.proceed(chain.request());
+    }
+
+    // Counts the bytes of each body as it crosses the wire: the request after CompressionInterceptor
+    // has encoded it, streamed bodies included, and the response before it is decoded. Once per
+    // attempt, so a retry's bytes count too.
+    public static class WireBytesListener extends EventListener {
+        private final EndpointStats stats;
+
+        WireBytesListener(String endpoint) {
+            this.stats = statsFor(endpoint);
+        }
+
+        @Override
+        public void requestBodyEnd(@NonNull Call call, long byteCount) {
+            stats.requestBytes.add(byteCount);
+        }
+
+        @Override
+        public void responseBodyEnd(@NonNull Call call, long byteCount) {
+            stats.responseBytes.add(byteCount);
+        }
+    }
+
+    // Records the call's latency once the body is done.
+    private static final class MeteredResponseBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final EndpointStats stats;
+        private final long startNanos;
+        private final BufferedSource source;
+        private boolean finished = false;
+
+        MeteredResponseBody(ResponseBody delegate, EndpointStats stats, long startNanos) {
+            this.delegate = delegate;
+            this.stats = stats;
+            this.startNanos = startNanos;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if (read == -1) {
+                        finish();
+                    }
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    finish();
+                    super.close();
+                }
+            });
+        }
+
+        private void finish() {
+            if (!finished) {
+                finished = true;
+                stats.latencyMillis.record((System.nanoTime() - startNanos) / 1_000_000);
+            }
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @NonNull
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
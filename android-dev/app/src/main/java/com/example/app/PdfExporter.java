@@ -0,0 +1,539 @@
+package com.example.app;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AlertDialog;
+import androidx.core.content.FileProvider;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.Image;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PdfCopy;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Story -> PDF for both the writing screen and the story viewer. Runs on its own background
+// thread and never holds the whole book: chapters are pulled from the Source one at a time and
+// written to the PdfWriter a paragraph at a time (iText flushes finished pages to the file).
+// Rendered chapters are cached by content hash (see build), so re-exporting after an edit only
+// renders the chapters that changed. Progress is reported per chapter, and a task can be
+// cancelled between paragraphs.
+public class PdfExporter {
+
+    // Where the story comes from. Called on the export thread.
+    public interface Source {
+        String getTitle();
+
+        // May be null
+        String getCoverUrl();
+
+        int getChapterCount();
+
+        // The heading as printed
+        String getChapterHeading(int index);
+
+        // Only one chapter's text is held at a time
+        CharSequence getChapterText(int index) throws IOException;
+    }
+
+    // Called on the main thread.
+    public interface Listener {
+        void onProgress(int chaptersDone, int chapterCount);
+
+        void onFinished(File pdf);
+
+        void onError(Exception e);
+    }
+
+    public static final class Task {
+        private volatile boolean cancelled;
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static final class CancelledException extends IOException {
+    }
+
+    // Covers are printed up to about 8 inches wide at 150 dpi
+    private static final int COVER_PRINT_PX = 1200;
+    // Part of every cache key; bump when the layout below changes
+    private static final String RENDER_VERSION = "1";
+    private static final String FRAGMENT_DIR = "pdf_fragments";
+    private static final String DOCUMENT_DIR = "pdf_documents";
+    private static final long MAX_FRAGMENT_BYTES = 32L * 1024 * 1024;
+    private static final long MAX_DOCUMENT_BYTES = 32L * 1024 * 1024;
+
+    private static final Font TITLE_FONT = new Font(Font.FontFamily.TIMES_ROMAN, 22, Font.BOLD);
+    private static final Font CHAPTER_FONT = new Font(Font.FontFamily.TIMES_ROMAN, 18, Font.BOLD);
+    private static final Font BODY_FONT = new Font(Font.FontFamily.TIMES_ROMAN, 12, Font.NORMAL);
+
+    private static final ExecutorService exportExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static Task export(Context context, Source source, File pdfFile, Listener listener) {
+        Context appContext = context.getApplicationContext();
+        Task task = new Task();
+        exportExecutor.execute(() -> {
+            try {
+                File document = build(appContext, source, task, (done, total) ->
+                        mainHandler.post(() -> listener.onProgress(done, total)));
+                copy(document, pdfFile);
+                if (task.isCancelled()) {
+                    pdfFile.delete();
+                    return;
+                }
+                mainHandler.post(() -> listener.onFinished(pdfFile));
+            } catch (CancelledException e) {
+                pdfFile.delete();
+            } catch (IOException | DocumentException | RuntimeException e) {
+                pdfFile.delete();
+                mainHandler.post(() -> listener.onError(e));
+            }
+        });
+        return task;
+    }
+
+    // Builds the PDF in the background ahead of an export (e.g. right after saving), so the
+    // export itself only has to copy the finished file.
+    public static void prepare(Context context, Source source) {
+        Context appContext = context.getApplicationContext();
+        exportExecutor.execute(() -> {
+            try {
+                build(appContext, source, new Task(), (done, total) -> { });
+            } catch (IOException | DocumentException | RuntimeException e) {
+                Log.w("PdfExporter", "Could not prepare PDF", e);
+            }
+        });
+    }
+
+    private interface Progress {
+        void report(int done, int total);
+    }
+
+    // The PDF is assembled from fragments: one for the front matter (cover and title) and one per
+    // chapter, each cached under the hash of what it renders. Only fragments whose content
+    // changed are rendered again; the rest are copied page by page. The assembled document is
+    // cached too, under the hash of its fragment list. Returns the assembled document.
+    private static File build(Context context, Source source, Task task, Progress progress)
+            throws IOException, DocumentException {
+        File fragmentDir = cacheDir(context, FRAGMENT_DIR);
+        File documentDir = cacheDir(context, DOCUMENT_DIR);
+        int chapterCount = source.getChapterCount();
+        progress.report(0, chapterCount);
+
+        List<File> fragments = new ArrayList<>(chapterCount + 1);
+        StringBuilder documentKey = new StringBuilder();
+
+        String title = source.getTitle();
+        String coverUrl = source.getCoverUrl();
+        File front = frontFragment(fragmentDir, title, coverUrl);
+        if (!front.exists()) {
+            Image cover = loadCover(context, coverUrl);
+            if (cover == null) {
+                // No cover after all (e.g. it is still being generated): file the page as the
+                // cover-less one, so the next export tries the cover again
+                front = frontFragment(fragmentDir, title, null);
+            }
+            if (!front.exists()) {
+                renderFrontMatter(title, cover, front);
+            }
+        }
+        fragments.add(front);
+        documentKey.append(front.getName());
+
+        for (int i = 0; i < chapterCount; i++) {
+            checkCancelled(task);
+            String heading = source.getChapterHeading(i);
+            // Only one chapter's text is held at a time
+            String text = source.getChapterText(i).toString().trim();
+            if (heading != null || !text.isEmpty()) {
+                File fragment = new File(fragmentDir,
+                        ContentHash.of(RENDER_VERSION + "|chapter|" + heading + "\n" + text) + ".pdf");
+                if (!fragment.exists()) {
+                    renderChapter(heading, text, fragment, task);
+                }
+                fragments.add(fragment);
+                documentKey.append(fragment.getName());
+            }
+            progress.report(i + 1, chapterCount);
+        }
+
+        File document = new File(documentDir, ContentHash.of(documentKey) + ".pdf");
+        if (!document.exists()) {
+            checkCancelled(task);
+            assemble(fragments, document);
+        }
+        long now = System.currentTimeMillis();
+        for (File fragment : fragments) {
+            fragment.setLastModified(now);
+        }
+        document.setLastModified(now);
+        trimCache(fragmentDir, MAX_FRAGMENT_BYTES);
+        trimCache(documentDir, MAX_DOCUMENT_BYTES);
+        return document;
+    }
+
+    private static File frontFragment(File fragmentDir, String title, String coverUrl) {
+        return new File(fragmentDir, ContentHash.of(RENDER_VERSION + "|front|" + title + "|" + coverUrl) + ".pdf");
+    }
+
+    private static void renderFrontMatter(String title, Image cover, File fragment)
+            throws IOException, DocumentException {
+        File tmp = new File(fragment.getPath() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            Document document = new Document();
+            PdfWriter.getInstance(document, out);
+            document.open();
+            if (cover != null) {
+                cover.scaleToFit(document.getPageSize().getWidth() - document.leftMargin() - document.rightMargin(),
+                        document.getPageSize().getHeight() - document.topMargin() - document.bottomMargin() - 60);
+                cover.setAlignment(Element.ALIGN_CENTER);
+                document.add(cover);
+            }
+            document.add(new Paragraph(title, TITLE_FONT));
+            document.close();
+        }
+        commit(tmp, fragment);
+    }
+
+    // Each chapter starts on a new page, so its pages don't depend on the chapters before it.
+    private static void renderChapter(String heading, String text, File fragment, Task task)
+            throws IOException, DocumentException {
+        File tmp = new File(fragment.getPath() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            Document document = new Document();
+            PdfWriter.getInstance(document, out);
+            document.open();
+            if (heading != null) {
+                document.add(new Paragraph(heading, CHAPTER_FONT));
+                document.add(new Paragraph(" ", BODY_FONT));
+            }
+            addParagraphs(document, text, BODY_FONT, task);
+            document.close();
+        } catch (CancelledException e) {
+            tmp.delete();
+            throw e;
+        }
+        commit(tmp, fragment);
+    }
+
+    // Concatenates the fragments' pages without re-rendering them.
+    private static void assemble(List<File> fragments, File target) throws IOException, DocumentException {
+        File tmp = new File(target.getPath() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            Document document = new Document();
+            PdfCopy copy = new PdfCopy(document, out);
+            document.open();
+            for (File fragment : fragments) {
+                PdfReader reader = new PdfReader(fragment.getPath());
+                try {
+                    for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+                        copy.addPage(copy.getImportedPage(reader, page));
+                    }
+                    copy.freeReader(reader);
+                } finally {
+                    reader.close();
+                }
+            }
+            document.close();
+        }
+        commit(tmp, target);
+    }
+
+    // Cache files only appear complete: written to a temp file, then renamed
+    private static void commit(File tmp, File target) throws IOException {
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            throw new IOException("Could not write " + target);
+        }
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        File dir = to.getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        try (InputStream in = new FileInputStream(from);
+             OutputStream out = new FileOutputStream(to)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private static File cacheDir(Context context, String name) {
+        File dir = new File(context.getCacheDir(), name);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+
+    // Deletes the least recently used files until the directory fits in maxBytes.
+    private static void trimCache(File dir, long maxBytes) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            total -= file.length();
+            file.delete();
+        }
+    }
+
+    // One iText paragraph per blank-line separated paragraph of the text.
+    private static void addParagraphs(Document document, CharSequence text, Font font, Task task)
+            throws DocumentException, CancelledException {
+        int length = text.length();
+        int start = 0;
+        while (start < length) {
+            int end = paragraphEnd(text, start);
+            String paragraph = text.subSequence(start, end).toString().trim();
+            if (!paragraph.isEmpty()) {
+                checkCancelled(task);
+                document.add(new Paragraph(paragraph, font));
+            }
+            start = end;
+        }
+    }
+
+    // End of the paragraph starting at 'start': just past the next blank line, or the end.
+    private static int paragraphEnd(CharSequence text, int start) {
+        int length = text.length();
+        for (int i = start; i < length; i++) {
+            if (text.charAt(i) != '\n') {
+                continue;
+            }
+            int j = i + 1;
+            while (j < length && text.charAt(j) != '\n' && Character.isWhitespace(text.charAt(j))) {
+                j++;
+            }
+            if (j < length && text.charAt(j) == '\n') {
+                return j + 1;
+            }
+        }
+        return length;
+    }
+
+    private static void checkCancelled(Task task) throws CancelledException {
+        if (task.isCancelled()) {
+            throw new CancelledException();
+        }
+    }
+
+    // Decoded from CoverImages' caches at print size, never at the source's full size.
+    private static Image loadCover(Context context, String url) {
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        try {
+            Bitmap bitmap = CoverImages.getPicasso(context)
+                    .load(url)
+                    .resize(COVER_PRINT_PX, COVER_PRINT_PX)
+                    .centerInside()
+                    .onlyScaleDown()
+                    .get();
+            ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, jpeg);
+            return Image.getInstance(jpeg.toByteArray());
+        } catch (IOException | DocumentException e) {
+            Log.w("PdfExporter", "Exporting without cover", e);
+            return null;
+        }
+    }
+
+    // --- Sources ---
+    // Writer and viewer number and head chapters the same way, so a story exported from either
+    // screen produces the same fragments.
+
+    // The story being written, chaptered as it is saved (StoryDocument.Snapshot.toChapters). The
+    // snapshot is immutable, so it is safe to read on the export thread.
+    public static Source fromSnapshot(String title, StoryDocument.Snapshot story) {
+        // As in toChapters: text before the first heading is an opening chapter of its own
+        int offset = story.hasOpening() ? 1 : 0;
+        return new Source() {
+            @Override
+            public String getTitle() {
+                return title;
+            }
+
+            @Override
+            public String getCoverUrl() {
+                return null;
+            }
+
+            @Override
+            public int getChapterCount() {
+                return story.getChapterCount() + offset;
+            }
+
+            @Override
+            public String getChapterHeading(int index) {
+                String chapterTitle;
+                if (index < offset) {
+                    chapterTitle = story.getOpeningTitle();
+                } else {
+                    chapterTitle = story.getChapterTitle(index - offset);
+                }
+                return heading(index + 1, chapterTitle);
+            }
+
+            @Override
+            public CharSequence getChapterText(int index) {
+                if (index < offset) {
+                    return story.substring(0, story.getPrologueEnd());
+                }
+                return story.substring(story.getChapterStart(index - offset), story.getChapterEnd(index - offset));
+            }
+        };
+    }
+
+    // A saved story: either an outline (chapter text is read from StoryRepository one chapter at
+    // a time, and fetched if it isn't stored) or a story with its chapters.
+    public static Source fromStory(Context context, Story story) {
+        StoryRepository repository = StoryRepository.getInstance(context);
+        return new Source() {
+            @Override
+            public String getTitle() {
+                return story.title;
+            }
+
+            @Override
+            public String getCoverUrl() {
+                return story.cover_image_url;
+            }
+
+            @Override
+            public int getChapterCount() {
+                return story.chapters == null ? 0 : story.chapters.size();
+            }
+
+            @Override
+            public String getChapterHeading(int index) {
+                Chapter chapter = story.chapters.get(index);
+                return heading(chapter.chapter_number, chapter.title);
+            }
+
+            @Override
+            public CharSequence getChapterText(int index) throws IOException {
+                Chapter chapter = story.chapters.get(index);
+                String content = chapter.content != null
+                        ? chapter.content
+                        : repository.loadChapter(story.id, chapter).content;
+                return content == null ? "" : content;
+            }
+        };
+    }
+
+    private static String heading(int chapterNumber, String title) {
+        return "Chapter " + chapterNumber + ": " + title;
+    }
+
+    // --- UI ---
+
+    // Exports with a progress dialog (with Cancel) and opens the share sheet when done.
+    public static void exportAndShare(Activity activity, Source source) {
+        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+        File pdfDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS);
+        File pdfFile = new File(pdfDir, "ScrybeStory_" + timeStamp + ".pdf");
+
+        View view = activity.getLayoutInflater().inflate(R.layout.dialog_pdf_export, null);
+        ProgressBar progressBar = view.findViewById(R.id.pdfExportProgressBar);
+        TextView statusTextView = view.findViewById(R.id.pdfExportStatusTextView);
+        Task[] task = new Task[1];
+        AlertDialog dialog = new AlertDialog.Builder(activity)
+                .setTitle("Exporting PDF")
+                .setView(view)
+                .setCancelable(false)
+                .setNegativeButton("Cancel", (d, which) -> task[0].cancel())
+                .show();
+
+        task[0] = export(activity, source, pdfFile, new Listener() {
+            @Override
+            public void onProgress(int chaptersDone, int chapterCount) {
+                progressBar.setMax(Math.max(1, chapterCount));
+                progressBar.setProgress(chaptersDone);
+                statusTextView.setText("Chapter " + chaptersDone + " of " + chapterCount);
+            }
+
+            @Override
+            public void onFinished(File pdf) {
+                if (activity.isDestroyed()) {
+                    return;
+                }
+                dialog.dismiss();
+                share(activity, pdf);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e("PdfExporter", "Error creating PDF", e);
+                if (activity.isDestroyed()) {
+                    return;
+                }
+                dialog.dismiss();
+                Toast.makeText(activity, "Could not create or share PDF.", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    static void share(Activity activity, File pdf) {
+        Uri pdfUri = FileProvider.getUriForFile(activity, BuildConfig.APPLICATION_ID + ".provider", pdf);
+        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+        shareIntent.setType("application/pdf");
+        shareIntent.putExtra(Intent.EXTRA_STREAM, pdfUri);
+        shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        activity.startActivity(Intent.createChooser(shareIntent, "Share Story PDF"));
+    }
+}
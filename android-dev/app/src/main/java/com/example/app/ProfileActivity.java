@@ -12,9 +12,6 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
 
 public class ProfileActivity extends AppCompatActivity {
 
@@ -73,36 +70,33 @@ public class ProfileActivity extends AppCompatActivity {
         return super.onOptionsItemSelected(item);
     }
 
+    // Both come from the local cache first and are refreshed in the background
     private void loadProfileData() {
-        apiService.readUsersMe().enqueue(new Callback<UserRead>() {
+        StoryRepository.getInstance(this).getProfile(new StoryRepository.Callback<UserRead>() {
             @Override
-            public void onResponse(@NonNull Call<UserRead> call, @NonNull Response<UserRead> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    usernameTextView.setText(response.body().username);
-                    emailTextView.setText(response.body().email);
-                }
+            public void onResult(UserRead user) {
+                usernameTextView.setText(user.username);
+                emailTextView.setText(user.email);
             }
 
             @Override
-            public void onFailure(@NonNull Call<UserRead> call, @NonNull Throwable t) {
+            public void onError(Throwable t) {
                 Toast.makeText(ProfileActivity.this, "Failed to load profile.", Toast.LENGTH_SHORT).show();
             }
         });
     }
 
     private void loadStatsData() {
-        apiService.getUserStats().enqueue(new Callback<ProfileStats>() {
+        StoryRepository.getInstance(this).getStats(new StoryRepository.Callback<ProfileStats>() {
             @Override
-            public void onResponse(@NonNull Call<ProfileStats> call, @NonNull Response<ProfileStats> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    storiesCreatedTextView.setText("Stories Created: " + response.body().stories_created);
-                    totalWordsTextView.setText("Total Words Written: " + response.body().total_words);
-                    mostCommonGenreTextView.setText("Favorite Genre: " + response.body().most_common_genre);
-                }
+            public void onResult(ProfileStats stats) {
+                storiesCreatedTextView.setText("Stories Created: " + stats.stories_created);
+                totalWordsTextView.setText("Total Words Written: " + stats.total_words);
+                mostCommonGenreTextView.setText("Favorite Genre: " + stats.most_common_genre);
             }
 
             @Override
-            public void onFailure(@NonNull Call<ProfileStats> call, @NonNull Throwable t) {
+            public void onError(Throwable t) {
                 Toast.makeText(ProfileActivity.this, "Failed to load stats.", Toast.LENGTH_SHORT).show();
             }
         });
@@ -2,7 +2,6 @@ package com.example.app;
 
 import android.content.Context;
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -11,9 +10,10 @@ import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
 public class RetrofitClient {
-    private static final String BASE_URL = "https://e92c99b6bd07.ngrok-free.app/";
+    static final String BASE_URL = "https://e92c99b6bd07.ngrok-free.app/";
 
-    private static Retrofit retrofit = null;
+    // Built once and shared; Retrofit service proxies are thread-safe.
+    private static volatile ApiService apiService = null;
     private static SessionManager sessionManager;
 
     // A static method to initialize the SessionManager
@@ -22,40 +22,50 @@ public class RetrofitClient {
     }
 
     public static ApiService getApiService() {
-        if (retrofit == null) {
-
-            // Interceptor to add the auth token to headers
-            Interceptor authInterceptor = new Interceptor() {
-                @Override
-                public Response intercept(Chain chain) throws IOException {
-                    Request originalRequest = chain.request();
-                    String token = sessionManager.fetchAuthToken();
-
-                    if (token != null && !token.isEmpty()) {
-                        Request.Builder builder = originalRequest.newBuilder()
-                                .header("Authorization", "Bearer " + token);
-                        Request newRequest = builder.build();
-                        return chain.proceed(newRequest);
-                    }
-                    return chain.proceed(originalRequest);
+        ApiService service = apiService;
+        if (service == null) {
+            synchronized (RetrofitClient.class) {
+                service = apiService;
+                if (service == null) {
+                    service = createApiService();
+                    apiService = service;
                 }
-            };
-
-            // Create a new OkHttpClient with the interceptor and a longer timeout
-            OkHttpClient okHttpClient = new OkHttpClient.Builder()
-                    .addInterceptor(authInterceptor) // Add the interceptor here
-                    .connectTimeout(60, TimeUnit.SECONDS)
-                    .readTimeout(60, TimeUnit.SECONDS)
-                    .writeTimeout(60, TimeUnit.SECONDS)
-                    .build();
-
-            // Build Retrofit using our custom OkHttpClient
-            retrofit = new Retrofit.Builder()
-                    .baseUrl(BASE_URL)
-                    .client(okHttpClient)
-                    .addConverterFactory(GsonConverterFactory.create())
-                    .build();
+            }
         }
+        return service;
+    }
+
+    private static ApiService createApiService() {
+        // Interceptor to add the auth token to headers
+        Interceptor authInterceptor = new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Request originalRequest = chain.request();
+                String token = sessionManager.fetchAuthToken();
+
+                if (token != null && !token.isEmpty()) {
+                    Request.Builder builder = originalRequest.newBuilder()
+                            .header("Authorization", "Bearer " + token);
+                    Request newRequest = builder.build();
+                    return chain.proceed(newRequest);
+                }
+                return chain.proceed(originalRequest);
+            }
+        };
+
+        // Derived from the shared client, so it reuses its connection pool and dispatcher
+        OkHttpClient okHttpClient = NetworkCore.getHttpClient().newBuilder()
+                .addInterceptor(authInterceptor) // Add the interceptor here
+                // gzip large request bodies and accept gzip responses; more codecs can be listed here
+                .addInterceptor(new CompressionInterceptor(CompressionInterceptor.DEFAULT_MIN_REQUEST_BYTES, new GzipCodec()))
+                .build();
+
+        // Build Retrofit using our custom OkHttpClient
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(BASE_URL)
+                .client(okHttpClient)
+                .addConverterFactory(GsonConverterFactory.create(NetworkCore.getGson()))
+                .build();
         return retrofit.create(ApiService.class);
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,12 @@
 package com.example.app;
 
+import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.Configuration;
 import android.os.Bundle;
 import android.view.MenuItem;
+import android.view.View;
+import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -18,6 +21,8 @@ public class SettingsActivity extends AppCompatActivity {
     private SwitchCompat themeSwitch;
     private SharedPreferences prefs;
     public static final String THEME_KEY = "theme_preference";
+    private static final int TAPS_TO_SHOW_DIAGNOSTICS = 5;
+    private int titleTaps = 0;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -61,6 +66,39 @@ public class SettingsActivity extends AppCompatActivity {
         deleteAccountTextView.setOnClickListener(v -> {
             Toast.makeText(this, "Account deletion coming soon!", Toast.LENGTH_SHORT).show();
         });
+
+        setUpDiagnostics();
+    }
+
+    // Hidden developer section with the recorded network metrics
+    private void setUpDiagnostics() {
+        View diagnosticsSection = findViewById(R.id.diagnosticsSection);
+        TextView metricsTextView = findViewById(R.id.networkMetricsTextView);
+        Button exportMetricsButton = findViewById(R.id.exportMetricsButton);
+        Button exportTraceButton = findViewById(R.id.exportTraceButton);
+
+        findViewById(R.id.settingsTitleTextView).setOnClickListener(v -> {
+            titleTaps++;
+            if (titleTaps >= TAPS_TO_SHOW_DIAGNOSTICS) {
+                metricsTextView.setText(NetworkMetrics.format());
+                diagnosticsSection.setVisibility(View.VISIBLE);
+            }
+        });
+
+        exportMetricsButton.setOnClickListener(v -> {
+            Intent shareIntent = new Intent(Intent.ACTION_SEND);
+            shareIntent.setType("application/json");
+            shareIntent.putExtra(Intent.EXTRA_TEXT, NetworkMetrics.toJson());
+            startActivity(Intent.createChooser(shareIntent, "Export Network Metrics"));
+        });
+
+        // Chrome/Perfetto trace of the recent story turns (open in ui.perfetto.dev)
+        exportTraceButton.setOnClickListener(v -> {
+            Intent shareIntent = new Intent(Intent.ACTION_SEND);
+            shareIntent.setType("application/json");
+            shareIntent.putExtra(Intent.EXTRA_TEXT, TurnTracer.toChromeTraceJson());
+            startActivity(Intent.createChooser(shareIntent, "Export Turn Trace"));
+        });
     }
 
     // This method handles clicks on toolbar items, including the back button
@@ -0,0 +1,151 @@
+package com.example.app;
+
+// Turns a stream of PCM frames into voiced segments using a VoiceActivityDetector:
+//   - silence before the first speech and after the last is dropped, except 'pad' worth on
+//     either side so word onsets and endings aren't clipped
+//   - pauses inside a segment are shortened to at most two pads
+//   - once a segment is at least 'minSegment' long, a pause of 'pause' ends it, so a long
+//     utterance is split and its first part can be transcribed while the user keeps talking
+//   - speech shorter than 'minSpeech' (a click, a bump of the phone) doesn't start anything
+// Frames are passed through as they are decided, so a segment streams out with at most a pad
+// and a bit of delay. Buffers are allocated once; processing a frame allocates nothing.
+public class SpeechSegmenter {
+
+    public interface Listener {
+        void onSegmentStart(int index);
+        // Audio of the current segment, in order. 'pcm' is only valid during the call.
+        void onAudio(short[] pcm, int offset, int length);
+        void onSegmentEnd(int index);
+    }
+
+    public static final int DEFAULT_PAD_MILLIS = 200;
+    public static final int DEFAULT_MIN_SPEECH_MILLIS = 60;
+    public static final int DEFAULT_PAUSE_MILLIS = 500;
+    public static final int DEFAULT_MIN_SEGMENT_MILLIS = 4000;
+
+    private final VoiceActivityDetector detector;
+    private final Listener listener;
+    private final int frameSize;
+    private final int padFrames;
+    private final int minSpeechFrames;
+    private final int pauseFrames;
+    private final int minSegmentFrames;
+
+    // Frames not passed on yet: the pre-speech pad plus speech that isn't confirmed yet
+    private final short[] history;
+    private final int historyCapacity;
+    private int historyStart;
+    private int historyCount;
+
+    private boolean inSegment;
+    private int segmentIndex = -1;
+    private int segmentFrames;
+    // Frames since the segment's last confirmed speech
+    private int silenceRun;
+    // Consecutive speech frames not confirmed yet
+    private int speechRun;
+
+    public SpeechSegmenter(VoiceActivityDetector detector, int sampleRate, Listener listener) {
+        this(detector, sampleRate, DEFAULT_PAD_MILLIS, DEFAULT_MIN_SPEECH_MILLIS,
+                DEFAULT_PAUSE_MILLIS, DEFAULT_MIN_SEGMENT_MILLIS, listener);
+    }
+
+    public SpeechSegmenter(VoiceActivityDetector detector, int sampleRate, int padMillis, int minSpeechMillis,
+                           int pauseMillis, int minSegmentMillis, Listener listener) {
+        this.detector = detector;
+        this.listener = listener;
+        this.frameSize = detector.getFrameSize();
+        int frameMillis = frameSize * 1000 / sampleRate;
+        this.padFrames = padMillis / frameMillis;
+        this.minSpeechFrames = Math.max(1, minSpeechMillis / frameMillis);
+        this.pauseFrames = Math.max(padFrames + 1, pauseMillis / frameMillis);
+        this.minSegmentFrames = minSegmentMillis / frameMillis;
+        this.historyCapacity = padFrames + minSpeechFrames;
+        this.history = new short[historyCapacity * frameSize];
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    // Number of segments started so far
+    public int getSegmentCount() {
+        return segmentIndex + 1;
+    }
+
+    // Feeds the frame of getFrameSize() samples starting at 'offset'.
+    public void process(short[] pcm, int offset) {
+        boolean speech = detector.isSpeech(pcm, offset);
+
+        if (inSegment && silenceRun < padFrames) {
+            // Talking, or within the pad after the last speech
+            silenceRun = speech ? 0 : silenceRun + 1;
+            emit(pcm, offset);
+            return;
+        }
+
+        // Between speech: hold the frame back until we know whether speech starts
+        remember(pcm, offset);
+        speechRun = speech ? speechRun + 1 : 0;
+        if (speechRun >= minSpeechFrames) {
+            if (!inSegment) {
+                inSegment = true;
+                segmentIndex++;
+                segmentFrames = 0;
+                listener.onSegmentStart(segmentIndex);
+            }
+            flushHistory();
+            silenceRun = 0;
+            speechRun = 0;
+            return;
+        }
+        if (inSegment) {
+            silenceRun++;
+            if (silenceRun >= pauseFrames && segmentFrames >= minSegmentFrames) {
+                endSegment();
+            }
+        }
+    }
+
+    // Ends the open segment, if any. The held-back frames are silence and are dropped.
+    public void finish() {
+        if (inSegment) {
+            endSegment();
+        }
+        historyCount = 0;
+        speechRun = 0;
+    }
+
+    private void endSegment() {
+        inSegment = false;
+        silenceRun = 0;
+        listener.onSegmentEnd(segmentIndex);
+    }
+
+    private void emit(short[] pcm, int offset) {
+        segmentFrames++;
+        listener.onAudio(pcm, offset, frameSize);
+    }
+
+    // Appends a frame to the history ring, overwriting the oldest one when full.
+    private void remember(short[] pcm, int offset) {
+        int slot;
+        if (historyCount < historyCapacity) {
+            slot = (historyStart + historyCount) % historyCapacity;
+            historyCount++;
+        } else {
+            slot = historyStart;
+            historyStart = (historyStart + 1) % historyCapacity;
+        }
+        System.arraycopy(pcm, offset, history, slot * frameSize, frameSize);
+    }
+
+    private void flushHistory() {
+        for (int i = 0; i < historyCount; i++) {
+            int slot = (historyStart + i) % historyCapacity;
+            emit(history, slot * frameSize);
+        }
+        historyStart = 0;
+        historyCount = 0;
+    }
+}
@@ -21,6 +21,10 @@ public class Story implements Serializable { // <-- Implement Serializable
     @SerializedName("cover_image_url")
     public String cover_image_url;
 
+    // Server-side change time; when it moves on, the stored chapters are out of date
+    @SerializedName("updated_at")
+    public String updated_at;
+
     @SerializedName("chapters")
     public List<Chapter> chapters;
 }
\ No newline at end of file
@@ -7,15 +7,34 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
-import com.squareup.picasso.Picasso;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
+// Library list. Every update is diffed against the current list on a background thread
+// (AsyncListDiffer) keyed on Story.id, so a refresh only touches rows that changed and one that
+// changes nothing binds nothing. A changed row is rebound partially: a new cover URL only reloads
+// the image, a new title or genre only resets the text.
 public class StoryAdapter extends RecyclerView.Adapter<StoryAdapter.StoryViewHolder> {
 
+    // Change payloads (bit flags), see StoryDiff.getChangePayload
+    static final int PAYLOAD_TEXT = 1;
+    static final int PAYLOAD_COVER = 1 << 1;
+
     private final Context context;
-    private List<Story> storyList;
     private final OnStoryClickListener listener;
+    private final AsyncListDiffer<Story> differ = new AsyncListDiffer<>(this, new StoryDiff());
+    // The newest list handed to the differ. Updates build on this rather than on the differ's
+    // current list, which lags behind while a diff is running.
+    private List<Story> latestList;
 
     // Interface for click events
     public interface OnStoryClickListener {
@@ -24,31 +43,156 @@ public class StoryAdapter extends RecyclerView.Adapter<StoryAdapter.StoryViewHol
 
     public StoryAdapter(Context context, List<Story> storyList, OnStoryClickListener listener) {
         this.context = context;
-        this.storyList = storyList;
         this.listener = listener;
+        setHasStableIds(true);
+        latestList = new ArrayList<>(storyList);
+        differ.submitList(latestList);
     }
 
     @NonNull
     @Override
     public StoryViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(context).inflate(R.layout.list_item_story, parent, false);
-        return new StoryViewHolder(view);
+        StoryViewHolder holder = new StoryViewHolder(view);
+        // Looked up at click time, so partial binds don't have to refresh the listener
+        view.setOnClickListener(v -> {
+            int position = holder.getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                listener.onStoryClick(differ.getCurrentList().get(position));
+            }
+        });
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull StoryViewHolder holder, int position) {
-        Story currentStory = storyList.get(position);
-        holder.bind(currentStory, listener);
+        Story currentStory = differ.getCurrentList().get(position);
+        holder.bindText(currentStory);
+        holder.bindCover(currentStory);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull StoryViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        int changes = 0;
+        for (Object payload : payloads) {
+            if (payload instanceof Integer) {
+                changes |= (Integer) payload;
+            }
+        }
+        Story currentStory = differ.getCurrentList().get(position);
+        if ((changes & PAYLOAD_TEXT) != 0) {
+            holder.bindText(currentStory);
+        }
+        if ((changes & PAYLOAD_COVER) != 0) {
+            holder.bindCover(currentStory);
+        }
     }
 
     @Override
     public int getItemCount() {
-        return storyList.size();
+        return differ.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).id;
+    }
+
+    // Warms the cover cache for 'count' rows starting at 'fromPosition'.
+    public void prefetchCovers(int fromPosition, int count) {
+        List<Story> stories = differ.getCurrentList();
+        int end = Math.min(stories.size(), fromPosition + count);
+        List<String> urls = new ArrayList<>(Math.max(0, end - fromPosition));
+        for (int i = Math.max(0, fromPosition); i < end; i++) {
+            urls.add(stories.get(i).cover_image_url);
+        }
+        CoverImages.prefetchThumbnails(context, urls);
+    }
+
+    public List<Story> getStories() {
+        return differ.getCurrentList();
     }
 
     public void setStories(List<Story> stories) {
-        this.storyList = stories;
-        notifyDataSetChanged();
+        submit(new ArrayList<>(stories), null);
+    }
+
+    // Adds stories as they stream in, replacing any already shown with the same id.
+    // 'committed' (may be null) runs once the list on screen includes them.
+    public void upsertStories(List<Story> stories, @Nullable Runnable committed) {
+        List<Story> updated = new ArrayList<>(latestList);
+        Map<Integer, Integer> positions = new HashMap<>(updated.size() * 2);
+        for (int i = 0; i < updated.size(); i++) {
+            positions.put(updated.get(i).id, i);
+        }
+        for (Story story : stories) {
+            Integer position = positions.get(story.id);
+            if (position != null) {
+                updated.set(position, story);
+            } else {
+                updated.add(story);
+                positions.put(story.id, updated.size() - 1);
+            }
+        }
+        submit(updated, committed);
+    }
+
+    public void upsertStories(List<Story> stories) {
+        upsertStories(stories, null);
+    }
+
+    public void removeStories(List<Integer> storyIds) {
+        Set<Integer> removed = new HashSet<>(storyIds);
+        List<Story> updated = new ArrayList<>(latestList.size());
+        for (Story story : latestList) {
+            if (!removed.contains(story.id)) {
+                updated.add(story);
+            }
+        }
+        submit(updated, null);
+    }
+
+    // Submitted lists are never modified afterwards; AsyncListDiffer requires that.
+    private void submit(List<Story> list, @Nullable Runnable committed) {
+        latestList = list;
+        differ.submitList(list, committed);
+    }
+
+    static class StoryDiff extends DiffUtil.ItemCallback<Story> {
+        @Override
+        public boolean areItemsTheSame(@NonNull Story oldItem, @NonNull Story newItem) {
+            return oldItem.id == newItem.id;
+        }
+
+        // Only what the row shows counts
+        @Override
+        public boolean areContentsTheSame(@NonNull Story oldItem, @NonNull Story newItem) {
+            return sameText(oldItem, newItem) && sameCover(oldItem, newItem);
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull Story oldItem, @NonNull Story newItem) {
+            int changes = 0;
+            if (!sameText(oldItem, newItem)) {
+                changes |= PAYLOAD_TEXT;
+            }
+            if (!sameCover(oldItem, newItem)) {
+                changes |= PAYLOAD_COVER;
+            }
+            return changes;
+        }
+
+        private static boolean sameText(Story a, Story b) {
+            return Objects.equals(a.title, b.title) && Objects.equals(a.genre, b.genre);
+        }
+
+        private static boolean sameCover(Story a, Story b) {
+            return Objects.equals(a.cover_image_url, b.cover_image_url);
+        }
     }
 
     public static class StoryViewHolder extends RecyclerView.ViewHolder {
@@ -63,21 +207,13 @@ public class StoryAdapter extends RecyclerView.Adapter<StoryAdapter.StoryViewHol
             coverImageView = itemView.findViewById(R.id.storyCoverImageView);
         }
 
-        public void bind(final Story story, final OnStoryClickListener listener) {
+        void bindText(Story story) {
             titleTextView.setText(story.title);
             genreTextView.setText(story.genre);
+        }
 
-            if (story.cover_image_url != null && !story.cover_image_url.isEmpty()) {
-                Picasso.get()
-                        .load(story.cover_image_url)
-                        .placeholder(android.R.drawable.ic_menu_gallery)
-                        .error(android.R.drawable.ic_menu_report_image)
-                        .into(coverImageView);
-            } else {
-                coverImageView.setImageResource(android.R.drawable.ic_menu_gallery);
-            }
-
-            itemView.setOnClickListener(v -> listener.onStoryClick(story));
+        void bindCover(Story story) {
+            CoverImages.loadThumbnail(coverImageView, story.cover_image_url);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,199 @@
+package com.example.app;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// Builds the bounded context we send with every StoryRequest.
+// Instead of uploading the whole story each turn we send:
+//   - the most recent paragraphs, up to a byte budget ("story_context")
+//   - a running summary of everything that fell out of that window ("story_summary")
+//   - the list of chapter titles so far ("chapter_titles"), read from the StoryDocument
+// Paragraphs are summarized once, when they leave the window, so the work per turn
+// only depends on how much text was added since the last request.
+public class StoryContextManager {
+
+    public static final int DEFAULT_WINDOW_BYTES = 6 * 1024;
+    public static final int DEFAULT_SUMMARY_BYTES = 1536;
+
+    // Each evicted paragraph is reduced to (at most) its first sentence, capped at this length.
+    private static final int MAX_SUMMARY_LINE_CHARS = 160;
+
+    private final int windowBytes;
+    private final int summaryBytes;
+
+    private final Deque<String> summaryLines = new ArrayDeque<>();
+    private int summaryLinesBytes = 0;
+
+    // Everything before this offset in the story has already been folded into the summary.
+    private int summarizedUpTo = 0;
+    // Offset where the window of the last built request started, and the text we sent (used for REPLACE).
+    private int windowStart = 0;
+    private String lastWindow = "";
+
+    public StoryContextManager() {
+        this(DEFAULT_WINDOW_BYTES, DEFAULT_SUMMARY_BYTES);
+    }
+
+    public StoryContextManager(int windowBytes, int summaryBytes) {
+        this.windowBytes = windowBytes;
+        this.summaryBytes = summaryBytes;
+    }
+
+    public void reset() {
+        summaryLines.clear();
+        summaryLinesBytes = 0;
+        summarizedUpTo = 0;
+        windowStart = 0;
+        lastWindow = "";
+    }
+
+    // Offset in the story where the text the AI last saw begins. A REPLACE answer
+    // rewrites only that window, so callers should splice it in from here.
+    public int getWindowStart() {
+        return windowStart;
+    }
+
+    public String getLastWindow() {
+        return lastWindow;
+    }
+
+    // Called after the story text before 'offset' has been rewritten in a way that
+    // invalidates the summary (e.g. a full replace). Everything is re-summarized lazily.
+    public void invalidateFrom(int offset) {
+        if (offset < summarizedUpTo) {
+            summaryLines.clear();
+            summaryLinesBytes = 0;
+            summarizedUpTo = 0;
+        }
+        windowStart = Math.min(windowStart, offset);
+    }
+
+    public StoryRequest buildRequest(String aiName, String genre, StoryDocument document, String userInput) {
+        StoryDocument.Snapshot story = document.snapshot();
+        String window = buildWindow(story);
+        return new StoryRequest(aiName, genre, window, userInput, getSummary(), story.getChapterTitles());
+    }
+
+    String buildWindow(CharSequence story) {
+        int length = story.length();
+        if (summarizedUpTo > length) {
+            // The story got shorter than what we summarized; start over.
+            invalidateFrom(0);
+        }
+
+        int start = findWindowStart(story);
+        foldIntoSummary(story, summarizedUpTo, start);
+        summarizedUpTo = Math.max(summarizedUpTo, start);
+        windowStart = start;
+        lastWindow = story.subSequence(start, length).toString();
+        return lastWindow;
+    }
+
+    String getSummary() {
+        if (summaryLines.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(summaryLinesBytes + summaryLines.size());
+        for (String line : summaryLines) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString().trim();
+    }
+
+    // Walks backwards from the end until the byte budget is used up, then snaps
+    // forward to the next paragraph break so we never send half a paragraph.
+    private int findWindowStart(CharSequence story) {
+        int length = story.length();
+        int bytes = 0;
+        int i = length;
+        while (i > summarizedUpTo) {
+            int cost = utf8Length(story.charAt(i - 1));
+            if (bytes + cost > windowBytes) {
+                break;
+            }
+            bytes += cost;
+            i--;
+        }
+        if (i <= summarizedUpTo) {
+            return summarizedUpTo;
+        }
+        int breakAt = indexOfParagraphBreak(story, i);
+        if (breakAt < 0 || breakAt >= length) {
+            // A single huge paragraph: keep the budget rather than the boundary.
+            return i;
+        }
+        return breakAt;
+    }
+
+    private void foldIntoSummary(CharSequence story, int from, int to) {
+        int paragraphStart = from;
+        while (paragraphStart < to) {
+            int paragraphEnd = indexOfParagraphBreak(story, paragraphStart);
+            if (paragraphEnd < 0 || paragraphEnd > to) {
+                paragraphEnd = to;
+            }
+            String line = summarizeParagraph(story.subSequence(paragraphStart, paragraphEnd).toString());
+            if (!line.isEmpty()) {
+                addSummaryLine(line);
+            }
+            paragraphStart = paragraphEnd;
+        }
+    }
+
+    private void addSummaryLine(String line) {
+        summaryLines.addLast(line);
+        summaryLinesBytes += utf8Length(line) + 1;
+        // Oldest lines go first once the summary exceeds its budget.
+        while (summaryLinesBytes > summaryBytes && summaryLines.size() > 1) {
+            String dropped = summaryLines.removeFirst();
+            summaryLinesBytes -= utf8Length(dropped) + 1;
+        }
+    }
+
+    static String summarizeParagraph(String paragraph) {
+        String text = paragraph.trim();
+        if (text.isEmpty()) {
+            return "";
+        }
+        int end = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if ((c == '.' || c == '!' || c == '?') && (i + 1 == text.length() || Character.isWhitespace(text.charAt(i + 1)))) {
+                end = i + 1;
+                break;
+            }
+        }
+        if (end > MAX_SUMMARY_LINE_CHARS) {
+            end = MAX_SUMMARY_LINE_CHARS;
+            return text.substring(0, end).trim() + "...";
+        }
+        return text.substring(0, end);
+    }
+
+    // Returns the index just after the next "\n\n" at or after 'from', or -1.
+    private static int indexOfParagraphBreak(CharSequence text, int from) {
+        for (int i = Math.max(from, 1); i < text.length(); i++) {
+            if (text.charAt(i) == '\n' && text.charAt(i - 1) == '\n') {
+                int end = i + 1;
+                while (end < text.length() && text.charAt(end) == '\n') {
+                    end++;
+                }
+                return end;
+            }
+        }
+        return -1;
+    }
+
+    private static int utf8Length(char c) {
+        if (c < 0x80) return 1;
+        if (c < 0x800) return 2;
+        // Surrogate halves count as 2 each, which adds up to 4 for the pair.
+        if (Character.isSurrogate(c)) return 2;
+        return 3;
+    }
+
+    static int utf8Length(String s) {
+        return s.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,388 @@
+package com.example.app;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// On-device copy of the user's library. Stories and their chapters are stored separately so the
+// library list can be read without touching chapter content. Not thread-confined, but all access
+// goes through background executors.
+public class StoryDatabase extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "stories.db";
+    private static final int DATABASE_VERSION = 3;
+
+    private static volatile StoryDatabase instance;
+
+    public static StoryDatabase getInstance(Context context) {
+        StoryDatabase db = instance;
+        if (db == null) {
+            synchronized (StoryDatabase.class) {
+                db = instance;
+                if (db == null) {
+                    db = new StoryDatabase(context.getApplicationContext());
+                    instance = db;
+                }
+            }
+        }
+        return db;
+    }
+
+    private StoryDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE stories ("
+                + "id INTEGER PRIMARY KEY, "
+                + "title TEXT, "
+                + "genre TEXT, "
+                + "ai_name TEXT, "
+                + "cover_image_url TEXT, "
+                + "updated_at TEXT, "
+                // 1 once the chapter list is stored; summaries from the library list don't have it.
+                // Chapter text may still be missing (content NULL) until the chapter is read.
+                + "has_chapters INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE TABLE chapters ("
+                + "id INTEGER PRIMARY KEY, "
+                + "story_id INTEGER NOT NULL, "
+                + "chapter_number INTEGER NOT NULL, "
+                + "title TEXT, "
+                + "content TEXT)");
+        db.execSQL("CREATE INDEX chapters_by_story ON chapters(story_id, chapter_number)");
+        // Sync watermarks and small cached responses (profile, stats), as key -> text
+        db.execSQL("CREATE TABLE sync_state (key TEXT PRIMARY KEY, value TEXT)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The database is only a cache of the server; start over.
+        db.execSQL("DROP TABLE IF EXISTS chapters");
+        db.execSQL("DROP TABLE IF EXISTS stories");
+        db.execSQL("DROP TABLE IF EXISTS sync_state");
+        onCreate(db);
+    }
+
+    // Inserts or replaces full stories and their chapters in one transaction.
+    public void writeStories(List<Story> stories) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement insertChapter = db.compileStatement(
+                    "INSERT OR REPLACE INTO chapters (id, story_id, chapter_number, title, content) VALUES (?, ?, ?, ?, ?)");
+            for (Story story : stories) {
+                ContentValues values = new ContentValues();
+                values.put("id", story.id);
+                values.put("title", story.title);
+                values.put("genre", story.genre);
+                values.put("ai_name", story.ai_name);
+                values.put("cover_image_url", story.cover_image_url);
+                values.put("updated_at", story.updated_at);
+                values.put("has_chapters", story.chapters != null ? 1 : 0);
+                db.insertWithOnConflict("stories", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+                if (story.chapters == null) {
+                    continue;
+                }
+                db.delete("chapters", "story_id = ?", new String[]{String.valueOf(story.id)});
+                for (Chapter chapter : story.chapters) {
+                    if (chapter == null) {
+                        continue;
+                    }
+                    insertChapter.clearBindings();
+                    insertChapter.bindLong(1, chapter.id);
+                    insertChapter.bindLong(2, story.id);
+                    insertChapter.bindLong(3, chapter.chapter_number);
+                    bindString(insertChapter, 4, chapter.title);
+                    bindString(insertChapter, 5, chapter.content);
+                    insertChapter.executeInsert();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Stores library-list summaries. A story whose updated_at moved on loses its stored chapters,
+    // so they are fetched again when it is opened. With 'onlyExisting', stories we don't have yet
+    // are skipped (they arrive with their page). Returns the summaries that were written.
+    public List<Story> writeStorySummaries(List<Story> summaries, boolean onlyExisting) {
+        List<Story> written = new ArrayList<>(summaries.size());
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Story story : summaries) {
+                String[] args = {String.valueOf(story.id)};
+                boolean exists;
+                boolean hasChapters = false;
+                try (Cursor cursor = db.rawQuery("SELECT updated_at, has_chapters FROM stories WHERE id = ?", args)) {
+                    exists = cursor.moveToFirst();
+                    if (exists) {
+                        String storedUpdatedAt = cursor.getString(0);
+                        hasChapters = cursor.getInt(1) == 1
+                                && (story.updated_at == null || story.updated_at.equals(storedUpdatedAt));
+                    }
+                }
+                if (!exists && onlyExisting) {
+                    continue;
+                }
+                if (exists && !hasChapters) {
+                    db.delete("chapters", "story_id = ?", args);
+                }
+                ContentValues values = new ContentValues();
+                values.put("id", story.id);
+                values.put("title", story.title);
+                values.put("genre", story.genre);
+                values.put("ai_name", story.ai_name);
+                values.put("cover_image_url", story.cover_image_url);
+                values.put("updated_at", story.updated_at);
+                values.put("has_chapters", hasChapters ? 1 : 0);
+                db.insertWithOnConflict("stories", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                written.add(story);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return written;
+    }
+
+    // Stores a story's outline (chapter titles, no text). Chapter text we already have is kept
+    // unless the story changed since it was stored.
+    public void writeStoryOutline(Story outline) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            String[] args = {String.valueOf(outline.id)};
+            boolean keepContent = false;
+            try (Cursor cursor = db.rawQuery("SELECT updated_at, has_chapters FROM stories WHERE id = ?", args)) {
+                if (cursor.moveToFirst()) {
+                    keepContent = cursor.getInt(1) == 1
+                            && outline.updated_at != null && outline.updated_at.equals(cursor.getString(0));
+                }
+            }
+            if (!keepContent) {
+                db.delete("chapters", "story_id = ?", args);
+            }
+            ContentValues values = new ContentValues();
+            values.put("id", outline.id);
+            values.put("title", outline.title);
+            values.put("genre", outline.genre);
+            values.put("ai_name", outline.ai_name);
+            values.put("cover_image_url", outline.cover_image_url);
+            values.put("updated_at", outline.updated_at);
+            values.put("has_chapters", 1);
+            db.insertWithOnConflict("stories", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+            SQLiteStatement insertChapter = db.compileStatement(
+                    "INSERT OR IGNORE INTO chapters (id, story_id, chapter_number, title) VALUES (?, ?, ?, ?)");
+            SQLiteStatement updateChapter = db.compileStatement(
+                    "UPDATE chapters SET chapter_number = ?, title = ? WHERE id = ?");
+            if (outline.chapters != null) {
+                for (Chapter chapter : outline.chapters) {
+                    if (chapter == null) {
+                        continue;
+                    }
+                    insertChapter.clearBindings();
+                    insertChapter.bindLong(1, chapter.id);
+                    insertChapter.bindLong(2, outline.id);
+                    insertChapter.bindLong(3, chapter.chapter_number);
+                    bindString(insertChapter, 4, chapter.title);
+                    insertChapter.executeInsert();
+
+                    updateChapter.clearBindings();
+                    updateChapter.bindLong(1, chapter.chapter_number);
+                    bindString(updateChapter, 2, chapter.title);
+                    updateChapter.bindLong(3, chapter.id);
+                    updateChapter.executeUpdateDelete();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Stores the text of one chapter whose outline is already stored.
+    public void writeChapterContent(Chapter chapter) {
+        ContentValues values = new ContentValues();
+        values.put("title", chapter.title);
+        values.put("content", chapter.content);
+        getWritableDatabase().update("chapters", values, "id = ?", new String[]{String.valueOf(chapter.id)});
+    }
+
+    // Removes stories (and their chapters) that are no longer on the server; returns their ids.
+    public List<Integer> deleteStoriesNotIn(Set<Integer> keepIds) {
+        List<Integer> stale = new ArrayList<>();
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            try (Cursor cursor = db.rawQuery("SELECT id FROM stories", null)) {
+                while (cursor.moveToNext()) {
+                    int id = cursor.getInt(0);
+                    if (!keepIds.contains(id)) {
+                        stale.add(id);
+                    }
+                }
+            }
+            for (int id : stale) {
+                String[] args = {String.valueOf(id)};
+                db.delete("chapters", "story_id = ?", args);
+                db.delete("stories", "id = ?", args);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return stale;
+    }
+
+    // One page of the library list (stories without chapters) after 'afterId', in the order the
+    // server pages them.
+    public List<Story> readStorySummaries(int afterId, int limit) {
+        List<Story> stories = new ArrayList<>(limit);
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT id, title, genre, ai_name, cover_image_url, updated_at FROM stories WHERE id > ? ORDER BY id LIMIT ?",
+                new String[]{String.valueOf(afterId), String.valueOf(limit)})) {
+            while (cursor.moveToNext()) {
+                stories.add(readStoryRow(cursor));
+            }
+        }
+        return stories;
+    }
+
+    // One story with all its chapters, or null if we don't have them all (or they are out of date).
+    public Story readStory(int storyId) {
+        SQLiteDatabase db = getReadableDatabase();
+        String[] args = {String.valueOf(storyId), String.valueOf(storyId)};
+        Story story;
+        try (Cursor cursor = db.rawQuery(
+                "SELECT id, title, genre, ai_name, cover_image_url, updated_at FROM stories WHERE id = ? AND has_chapters = 1"
+                        + " AND NOT EXISTS (SELECT 1 FROM chapters WHERE story_id = ? AND content IS NULL)", args)) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            story = readStoryRow(cursor);
+        }
+        story.chapters = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery(
+                "SELECT id, chapter_number, title, content FROM chapters WHERE story_id = ? ORDER BY chapter_number",
+                new String[]{String.valueOf(storyId)})) {
+            while (cursor.moveToNext()) {
+                Chapter chapter = new Chapter(cursor.getInt(1), cursor.getString(2), cursor.getString(3));
+                chapter.id = cursor.getInt(0);
+                chapter.story_id = storyId;
+                story.chapters.add(chapter);
+            }
+        }
+        return story;
+    }
+
+    // A story with its chapter titles but no chapter text (content is null), or null if we
+    // don't have its outline. Reads no chapter text, so its cost doesn't grow with the story.
+    public Story readStoryOutline(int storyId) {
+        SQLiteDatabase db = getReadableDatabase();
+        String[] args = {String.valueOf(storyId)};
+        Story story;
+        try (Cursor cursor = db.rawQuery(
+                "SELECT id, title, genre, ai_name, cover_image_url, updated_at FROM stories WHERE id = ? AND has_chapters = 1", args)) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            story = readStoryRow(cursor);
+        }
+        story.chapters = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery(
+                "SELECT id, chapter_number, title FROM chapters WHERE story_id = ? ORDER BY chapter_number", args)) {
+            while (cursor.moveToNext()) {
+                Chapter chapter = new Chapter(cursor.getInt(1), cursor.getString(2), null);
+                chapter.id = cursor.getInt(0);
+                chapter.story_id = storyId;
+                story.chapters.add(chapter);
+            }
+        }
+        return story;
+    }
+
+    // One chapter with its text, or null if the text isn't stored.
+    public Chapter readChapter(int chapterId) {
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT story_id, chapter_number, title, content FROM chapters WHERE id = ? AND content IS NOT NULL",
+                new String[]{String.valueOf(chapterId)})) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            Chapter chapter = new Chapter(cursor.getInt(1), cursor.getString(2), cursor.getString(3));
+            chapter.id = chapterId;
+            chapter.story_id = cursor.getInt(0);
+            return chapter;
+        }
+    }
+
+    public int countStories() {
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT COUNT(*) FROM stories", null)) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+
+    public String readSyncState(String key) {
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT value FROM sync_state WHERE key = ?", new String[]{key})) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    public void writeSyncState(String key, String value) {
+        ContentValues values = new ContentValues();
+        values.put("key", key);
+        values.put("value", value);
+        getWritableDatabase().insertWithOnConflict("sync_state", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    // Forgets everything, e.g. when the user logs out.
+    public void clear() {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete("chapters", null, null);
+            db.delete("stories", null, null);
+            db.delete("sync_state", null, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static Story readStoryRow(Cursor cursor) {
+        Story story = new Story();
+        story.id = cursor.getInt(0);
+        story.title = cursor.getString(1);
+        story.genre = cursor.getString(2);
+        story.ai_name = cursor.getString(3);
+        story.cover_image_url = cursor.getString(4);
+        story.updated_at = cursor.getString(5);
+        return story;
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.example.app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// The story being written, as a rope (a height-balanced tree of immutable text leaves) plus an
+// explicit chapter index. Appends and range replacements are O(log n) and never copy the whole
+// story. Because nodes are immutable, snapshot() is O(1) and a snapshot can be read from a
+// background thread (save, export) while writing continues.
+public class StoryDocument implements CharSequence {
+
+    // Leaves are kept at most this long; small appends are merged into the last leaf.
+    private static final int MAX_LEAF_LENGTH = 512;
+
+    public static final class ChapterMark {
+        public final String title;
+        public final int start;
+
+        ChapterMark(String title, int start) {
+            this.title = title;
+            this.start = start;
+        }
+    }
+
+    private Snapshot current = new Snapshot(null, Collections.emptyList());
+
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    public void append(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return;
+        }
+        current = new Snapshot(appendText(current.root, text), current.chapters);
+    }
+
+    public void append(CharSequence text, int start, int end) {
+        append(text.subSequence(start, end));
+    }
+
+    // Starts a new chapter at the current end of the story.
+    public void startChapter(String title) {
+        List<ChapterMark> chapters = new ArrayList<>(current.chapters);
+        chapters.add(new ChapterMark(title, length()));
+        current = new Snapshot(current.root, Collections.unmodifiableList(chapters));
+    }
+
+    public void replace(int start, int end, CharSequence text) {
+        int length = length();
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("replace " + start + ".." + end + " of " + length);
+        }
+        Node[] head = split(current.root, start);
+        Node[] tail = split(head[1], end - start);
+        Node replacement = text == null || text.length() == 0 ? null : fromText(text);
+        Node root = join(join(head[0], replacement), tail[1]);
+
+        // Chapters after the edit move with the text; chapters inside it keep their relative
+        // position, clamped to the new text.
+        int newLength = text == null ? 0 : text.length();
+        int delta = newLength - (end - start);
+        List<ChapterMark> chapters = new ArrayList<>(current.chapters.size());
+        for (ChapterMark mark : current.chapters) {
+            int markStart = mark.start;
+            if (markStart >= end && markStart > start) {
+                markStart += delta;
+            } else if (markStart > start) {
+                markStart = start + Math.min(markStart - start, newLength);
+            }
+            chapters.add(markStart == mark.start ? mark : new ChapterMark(mark.title, markStart));
+        }
+        current = new Snapshot(root, Collections.unmodifiableList(chapters));
+    }
+
+    public void clear() {
+        current = new Snapshot(null, Collections.emptyList());
+    }
+
+    public List<String> getChapterTitles() {
+        return current.getChapterTitles();
+    }
+
+    @Override
+    public int length() {
+        return current.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return current.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return current.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return current.toString();
+    }
+
+    // An immutable view of the document at one point in time.
+    public static final class Snapshot implements CharSequence {
+        private final Node root;
+        private final List<ChapterMark> chapters;
+
+        Snapshot(Node root, List<ChapterMark> chapters) {
+            this.root = root;
+            this.chapters = chapters;
+        }
+
+        @Override
+        public int length() {
+            return root == null ? 0 : root.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException("index " + index + " of " + length());
+            }
+            Node node = root;
+            while (node instanceof Concat) {
+                Concat concat = (Concat) node;
+                if (index < concat.left.length) {
+                    node = concat.left;
+                } else {
+                    index -= concat.left.length;
+                    node = concat.right;
+                }
+            }
+            return ((Leaf) node).text.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return substring(start, end);
+        }
+
+        public String substring(int start, int end) {
+            if (start < 0 || end > length() || start > end) {
+                throw new IndexOutOfBoundsException("substring " + start + ".." + end + " of " + length());
+            }
+            StringBuilder sb = new StringBuilder(end - start);
+            appendRange(root, start, end, sb);
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return substring(0, length());
+        }
+
+        public int getChapterCount() {
+            return chapters.size();
+        }
+
+        public String getChapterTitle(int chapter) {
+            return chapters.get(chapter).title;
+        }
+
+        public int getChapterStart(int chapter) {
+            return chapters.get(chapter).start;
+        }
+
+        public int getChapterEnd(int chapter) {
+            return chapter + 1 < chapters.size() ? chapters.get(chapter + 1).start : length();
+        }
+
+        // Text before the first chapter heading (the opening of the story).
+        public int getPrologueEnd() {
+            return chapters.isEmpty() ? length() : chapters.get(0).start;
+        }
+
+        // Whether text before the first heading is saved and exported as an opening chapter of its
+        // own. A story without headings is all opening.
+        public boolean hasOpening() {
+            return chapters.isEmpty() || !substring(0, getPrologueEnd()).trim().isEmpty();
+        }
+
+        public String getOpeningTitle() {
+            return chapters.isEmpty() ? "Chapter 1" : "Prologue";
+        }
+
+        // The story as wire chapters for saving, numbered as PdfExporter.fromSnapshot numbers them.
+        public List<Chapter> toChapters() {
+            List<Chapter> result = new ArrayList<>(chapters.size() + 1);
+            if (hasOpening()) {
+                result.add(new Chapter(1, getOpeningTitle(), substring(0, getPrologueEnd()).trim()));
+            }
+            for (int i = 0; i < chapters.size(); i++) {
+                String content = substring(getChapterStart(i), getChapterEnd(i)).trim();
+                result.add(new Chapter(result.size() + 1, getChapterTitle(i), content));
+            }
+            return result;
+        }
+
+        public List<String> getChapterTitles() {
+            List<String> titles = new ArrayList<>(chapters.size());
+            for (ChapterMark mark : chapters) {
+                titles.add(mark.title);
+            }
+            return titles;
+        }
+    }
+
+    // --- Rope nodes ---
+
+    abstract static class Node {
+        final int length;
+        final int height;
+
+        Node(int length, int height) {
+            this.length = length;
+            this.height = height;
+        }
+    }
+
+    static final class Leaf extends Node {
+        final String text;
+
+        Leaf(String text) {
+            super(text.length(), 0);
+            this.text = text;
+        }
+    }
+
+    static final class Concat extends Node {
+        final Node left;
+        final Node right;
+
+        Concat(Node left, Node right) {
+            super(left.length + right.length, Math.max(left.height, right.height) + 1);
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private static void appendRange(Node node, int start, int end, StringBuilder out) {
+        while (node != null && start < end) {
+            if (node instanceof Leaf) {
+                out.append(((Leaf) node).text, start, end);
+                return;
+            }
+            Concat concat = (Concat) node;
+            int leftLength = concat.left.length;
+            if (start < leftLength) {
+                appendRange(concat.left, start, Math.min(end, leftLength), out);
+            }
+            if (end <= leftLength) {
+                return;
+            }
+            start = Math.max(start - leftLength, 0);
+            end -= leftLength;
+            node = concat.right;
+        }
+    }
+
+    private static Node appendText(Node root, CharSequence text) {
+        if (root == null) {
+            return fromText(text);
+        }
+        Node merged = mergeIntoLastLeaf(root, text);
+        return merged != null ? merged : join(root, fromText(text));
+    }
+
+    // Path-copies the rightmost leaf with the text added, if it still fits. Keeps the typewriter's
+    // few-characters-per-frame appends from turning the rope into thousands of tiny leaves.
+    private static Node mergeIntoLastLeaf(Node node, CharSequence text) {
+        if (node instanceof Leaf) {
+            String leafText = ((Leaf) node).text;
+            if (leafText.length() + text.length() > MAX_LEAF_LENGTH) {
+                return null;
+            }
+            return new Leaf(leafText + text);
+        }
+        Concat concat = (Concat) node;
+        Node right = mergeIntoLastLeaf(concat.right, text);
+        return right == null ? null : new Concat(concat.left, right);
+    }
+
+    // Builds a balanced tree of leaves for a block of text.
+    private static Node fromText(CharSequence text) {
+        return fromText(text, 0, text.length());
+    }
+
+    private static Node fromText(CharSequence text, int start, int end) {
+        if (end - start <= MAX_LEAF_LENGTH) {
+            return new Leaf(text.subSequence(start, end).toString());
+        }
+        int mid = start + (end - start) / 2;
+        // Don't split a surrogate pair between leaves.
+        if (Character.isHighSurrogate(text.charAt(mid - 1))) {
+            mid++;
+        }
+        return new Concat(fromText(text, start, mid), fromText(text, mid, end));
+    }
+
+    private static int height(Node node) {
+        return node == null ? -1 : node.height;
+    }
+
+    // Concatenates two balanced trees, descending the taller one's spine (AVL join).
+    static Node join(Node left, Node right) {
+        if (left == null || left.length == 0) return right;
+        if (right == null || right.length == 0) return left;
+        if (left.height > right.height + 1) {
+            Concat concat = (Concat) left;
+            return balance(concat.left, join(concat.right, right));
+        }
+        if (right.height > left.height + 1) {
+            Concat concat = (Concat) right;
+            return balance(join(left, concat.left), concat.right);
+        }
+        return new Concat(left, right);
+    }
+
+    private static Node balance(Node left, Node right) {
+        int diff = left.height - right.height;
+        if (diff > 1) {
+            Concat l = (Concat) left;
+            if (height(l.left) >= height(l.right)) {
+                return new Concat(l.left, new Concat(l.right, right));
+            }
+            Concat lr = (Concat) l.right;
+            return new Concat(new Concat(l.left, lr.left), new Concat(lr.right, right));
+        }
+        if (diff < -1) {
+            Concat r = (Concat) right;
+            if (height(r.right) >= height(r.left)) {
+                return new Concat(new Concat(left, r.left), r.right);
+            }
+            Concat rl = (Concat) r.left;
+            return new Concat(new Concat(left, rl.left), new Concat(rl.right, r.right));
+        }
+        return new Concat(left, right);
+    }
+
+    // Splits a tree into [0, index) and [index, length).
+    static Node[] split(Node node, int index) {
+        if (node == null) {
+            return new Node[]{null, null};
+        }
+        if (index <= 0) {
+            return new Node[]{null, node};
+        }
+        if (index >= node.length) {
+            return new Node[]{node, null};
+        }
+        if (node instanceof Leaf) {
+            String text = ((Leaf) node).text;
+            return new Node[]{new Leaf(text.substring(0, index)), new Leaf(text.substring(index))};
+        }
+        Concat concat = (Concat) node;
+        int leftLength = concat.left.length;
+        if (index < leftLength) {
+            Node[] parts = split(concat.left, index);
+            return new Node[]{parts[0], join(parts[1], concat.right)};
+        }
+        if (index == leftLength) {
+            return new Node[]{concat.left, concat.right};
+        }
+        Node[] parts = split(concat.right, index - leftLength);
+        return new Node[]{join(concat.left, parts[0]), parts[1]};
+    }
+}
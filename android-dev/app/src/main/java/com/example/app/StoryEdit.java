@@ -0,0 +1,27 @@
+package com.example.app;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.List;
+
+// One range replacement in a REPLACE answer. Offsets are into the story_context we sent.
+public class StoryEdit {
+    @SerializedName("start")
+    public int start;
+
+    @SerializedName("end")
+    public int end;
+
+    @SerializedName("text")
+    public String text;
+
+    // Applies edits (sorted, non-overlapping, as the server sends them) to a copy of 'base'.
+    public static String applyAll(String base, List<StoryEdit> edits) {
+        StringBuilder sb = new StringBuilder(base);
+        for (int i = edits.size() - 1; i >= 0; i--) {
+            StoryEdit edit = edits.get(i);
+            sb.replace(edit.start, edit.end, edit.text == null ? "" : edit.text);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.app;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// The story viewer's content. Rows are the header (cover and title), then per chapter a
+// heading followed by either its paragraphs or a single "loading" row until its text arrives.
+// Only the rows on screen are laid out, and paragraph text comes in already measured
+// (PrecomputedTextCompat, see precomputeParagraphs), so binding a row does no text layout.
+// Binding any row of a chapter reports it to the listener, which loads it and its neighbours.
+public class StoryReaderAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+    public interface ChapterListener {
+        // A row of this chapter is about to be shown; load it if it isn't loaded.
+        void onChapterNeeded(int chapterIndex);
+    }
+
+    private static final int TYPE_HEADER = 0;
+    private static final int TYPE_CHAPTER_TITLE = 1;
+    private static final int TYPE_PARAGRAPH = 2;
+    private static final int TYPE_LOADING = 3;
+
+    private static final class Row {
+        final long id;
+        final int type;
+        final int chapterIndex;
+        CharSequence text;
+
+        Row(long id, int type, int chapterIndex, CharSequence text) {
+            this.id = id;
+            this.type = type;
+            this.chapterIndex = chapterIndex;
+            this.text = text;
+        }
+    }
+
+    private final List<Row> rows = new ArrayList<>();
+    private final ChapterListener listener;
+    private long nextId = 1;
+    private String title;
+    private String coverUrl;
+
+    public StoryReaderAdapter(ChapterListener listener) {
+        this.listener = listener;
+        setHasStableIds(true);
+        rows.add(new Row(0, TYPE_HEADER, -1, null));
+    }
+
+    public void setHeader(String title, String coverUrl) {
+        boolean changed = !Objects.equals(this.title, title) || !Objects.equals(this.coverUrl, coverUrl);
+        this.title = title;
+        this.coverUrl = coverUrl;
+        if (changed) {
+            notifyItemChanged(0);
+        }
+    }
+
+    // Lays out the outline: a heading and a loading row per chapter.
+    public void setChapters(List<Chapter> chapters) {
+        int oldCount = rows.size();
+        rows.subList(1, oldCount).clear();
+        notifyItemRangeRemoved(1, oldCount - 1);
+        for (int i = 0; i < chapters.size(); i++) {
+            Chapter chapter = chapters.get(i);
+            rows.add(new Row(nextId++, TYPE_CHAPTER_TITLE, i, "Chapter " + chapter.chapter_number + ": " + chapter.title));
+            rows.add(new Row(nextId++, TYPE_LOADING, i, "Loading chapter…"));
+        }
+        notifyItemRangeInserted(1, rows.size() - 1);
+    }
+
+    // Replaces a chapter's loading row with its paragraphs.
+    public void setChapterParagraphs(int chapterIndex, List<? extends CharSequence> paragraphs) {
+        int position = loadingRowOf(chapterIndex);
+        if (position < 0) {
+            return;
+        }
+        if (paragraphs.isEmpty()) {
+            rows.remove(position);
+            notifyItemRemoved(position);
+            return;
+        }
+        List<Row> paragraphRows = new ArrayList<>(paragraphs.size());
+        for (CharSequence paragraph : paragraphs) {
+            paragraphRows.add(new Row(nextId++, TYPE_PARAGRAPH, chapterIndex, paragraph));
+        }
+        rows.remove(position);
+        rows.addAll(position, paragraphRows);
+        notifyItemRemoved(position);
+        notifyItemRangeInserted(position, paragraphRows.size());
+    }
+
+    public void setChapterFailed(int chapterIndex) {
+        int position = loadingRowOf(chapterIndex);
+        if (position >= 0) {
+            rows.get(position).text = "Could not load this chapter.";
+            notifyItemChanged(position);
+        }
+    }
+
+    private int loadingRowOf(int chapterIndex) {
+        for (int i = 1; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            if (row.chapterIndex == chapterIndex && row.type == TYPE_LOADING) {
+                return i;
+            }
+            if (row.chapterIndex > chapterIndex) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    // Splits chapter text into paragraphs (blank-line separated) and measures them for text
+    // views with 'params'. Slow for long chapters; call off the main thread.
+    public static List<CharSequence> precomputeParagraphs(String content, PrecomputedTextCompat.Params params) {
+        List<CharSequence> paragraphs = new ArrayList<>();
+        if (content == null) {
+            return paragraphs;
+        }
+        for (String paragraph : content.split("\n\\s*\n")) {
+            String trimmed = paragraph.trim();
+            if (!trimmed.isEmpty()) {
+                paragraphs.add(params != null ? PrecomputedTextCompat.create(trimmed, params) : trimmed);
+            }
+        }
+        return paragraphs;
+    }
+
+    // Text metrics of the paragraph rows, for precomputeParagraphs.
+    public static PrecomputedTextCompat.Params paragraphTextParams(ViewGroup parent) {
+        TextView template = (TextView) LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_canvas_paragraph, parent, false);
+        return TextViewCompat.getTextMetricsParams(template);
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return rows.get(position).type;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return rows.get(position).id;
+    }
+
+    @Override
+    public int getItemCount() {
+        return rows.size();
+    }
+
+    @NonNull
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+        if (viewType == TYPE_HEADER) {
+            return new HeaderViewHolder(inflater.inflate(R.layout.item_reader_header, parent, false));
+        }
+        if (viewType == TYPE_CHAPTER_TITLE) {
+            View chapterView = inflater.inflate(R.layout.item_canvas_chapter, parent, false);
+            return new TextViewHolder(chapterView, R.id.canvasChapterTextView);
+        }
+        View paragraphView = inflater.inflate(R.layout.item_canvas_paragraph, parent, false);
+        return new TextViewHolder(paragraphView, R.id.paragraphTextView);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        Row row = rows.get(position);
+        if (row.type == TYPE_HEADER) {
+            HeaderViewHolder header = (HeaderViewHolder) holder;
+            header.titleTextView.setText(title);
+            CoverImages.loadHeader(header.coverImageView, coverUrl);
+            return;
+        }
+        TextView textView = ((TextViewHolder) holder).textView;
+        if (row.text instanceof PrecomputedTextCompat) {
+            PrecomputedTextCompat text = (PrecomputedTextCompat) row.text;
+            // setPrecomputedText throws if the view's metrics differ (e.g. a font scale change)
+            if (text.getParams().equals(TextViewCompat.getTextMetricsParams(textView))) {
+                TextViewCompat.setPrecomputedText(textView, text);
+            } else {
+                textView.setText(text.toString());
+            }
+        } else {
+            textView.setText(row.text);
+        }
+        listener.onChapterNeeded(row.chapterIndex);
+    }
+
+    static class HeaderViewHolder extends RecyclerView.ViewHolder {
+        ImageView coverImageView;
+        TextView titleTextView;
+
+        HeaderViewHolder(@NonNull View itemView) {
+            super(itemView);
+            coverImageView = itemView.findViewById(R.id.coverImageView);
+            titleTextView = itemView.findViewById(R.id.titleTextView);
+        }
+    }
+
+    static class TextViewHolder extends RecyclerView.ViewHolder {
+        TextView textView;
+
+        TextViewHolder(@NonNull View itemView, int textViewId) {
+            super(itemView);
+            textView = itemView.findViewById(textViewId);
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package com.example.app;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Response;
+
+// Offline-first access to the library, single stories and the profile. Reads are answered from
+// StoryDatabase first and refreshed from the server in the background:
+//   - the library list is paged (api/stories/summaries, summaries only, cursor = last story id);
+//     pages we have stored are served locally, the rest are fetched as the list scrolls to them
+//   - syncChanges lists only stories changed since the last sync (updated_since), and prunes
+//     deleted ones when the server's story count no longer matches ours
+//   - opening a story needs only its outline (chapter titles); chapter text is fetched per
+//     chapter as the reader reaches it, and kept
+//   - profile and stats are cached as JSON and refreshed on every visit
+// Callbacks run on the main thread.
+public class StoryRepository {
+
+    public interface PageCallback {
+        // Summaries after the requested id, in server order; 'hasMore' if another page follows.
+        void onPage(List<Story> summaries, boolean hasMore);
+
+        void onError(Throwable t);
+    }
+
+    public interface LibraryListener {
+        // Stories that changed on the server since the last sync (summaries, no chapters).
+        void onChanged(List<Story> summaries);
+
+        void onRemoved(List<Integer> storyIds);
+
+        void onError(Throwable t);
+    }
+
+    public interface Callback<T> {
+        void onResult(T value);
+
+        void onError(Throwable t);
+    }
+
+    public static final int PAGE_SIZE = 50;
+    // Sync listings are summaries of changed stories only, so they can use bigger pages.
+    private static final int SYNC_PAGE_SIZE = 200;
+
+    private static final String KEY_STORIES_SYNCED_AT = "stories_synced_at";
+    // Set once the last page of the library has been stored.
+    private static final String KEY_LIBRARY_COMPLETE = "library_complete";
+    private static final String KEY_PROFILE = "profile";
+    private static final String KEY_STATS = "stats";
+
+    private static volatile StoryRepository instance;
+
+    public static StoryRepository getInstance(Context context) {
+        StoryRepository repository = instance;
+        if (repository == null) {
+            synchronized (StoryRepository.class) {
+                repository = instance;
+                if (repository == null) {
+                    repository = new StoryRepository(StoryDatabase.getInstance(context));
+                    instance = repository;
+                }
+            }
+        }
+        return repository;
+    }
+
+    private final StoryDatabase db;
+    // Reads are quick and must not wait behind a sync, so they get their own thread.
+    private final ExecutorService readExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService syncExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile Call<ResponseBody> syncCall;
+    // Chapter id -> callbacks waiting for it. Main thread only.
+    private final Map<Integer, List<Callback<Chapter>>> pendingChapters = new HashMap<>();
+
+    private StoryRepository(StoryDatabase db) {
+        this.db = db;
+    }
+
+    // --- Library ---
+
+    // The page after 'afterId' (0 for the first page).
+    public void loadLibraryPage(int afterId, PageCallback callback) {
+        readExecutor.execute(() -> {
+            List<Story> stored = db.readStorySummaries(afterId, PAGE_SIZE);
+            boolean complete = isLibraryComplete();
+            if (stored.size() == PAGE_SIZE || complete) {
+                mainHandler.post(() -> callback.onPage(stored, stored.size() == PAGE_SIZE));
+                return;
+            }
+            // We haven't paged this far before; ask the server
+            syncExecutor.execute(() -> fetchPage(afterId, stored, callback));
+        });
+    }
+
+    private void fetchPage(int afterId, List<Story> stored, PageCallback callback) {
+        try {
+            LibraryIngestor.Page page = LibraryIngestor.ingestPage(summaryCall(afterId, PAGE_SIZE, null), db, false);
+            if (db.readSyncState(KEY_STORIES_SYNCED_AT) == null && page.syncTime != null) {
+                db.writeSyncState(KEY_STORIES_SYNCED_AT, page.syncTime);
+            }
+            if (page.nextCursor == null) {
+                db.writeSyncState(KEY_LIBRARY_COMPLETE, "1");
+            }
+            mainHandler.post(() -> callback.onPage(page.stories, page.nextCursor != null));
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            // Offline: show what we have; the caller retries later
+            mainHandler.post(() -> {
+                callback.onPage(stored, true);
+                callback.onError(e);
+            });
+        } finally {
+            syncCall = null;
+        }
+    }
+
+    // Brings stored stories up to date. Does nothing before the first page has been fetched.
+    public void syncChanges(LibraryListener listener) {
+        syncExecutor.execute(() -> {
+            String since = db.readSyncState(KEY_STORIES_SYNCED_AT);
+            if (since == null) {
+                return;
+            }
+            try {
+                // Until the whole library has been paged in, only stories we already have are
+                // updated; new ones arrive with their page.
+                boolean complete = isLibraryComplete();
+                List<Story> changed = new ArrayList<>();
+                String syncTime = null;
+                int serverCount = -1;
+                Integer cursor = null;
+                do {
+                    LibraryIngestor.Page page = LibraryIngestor.ingestPage(
+                            summaryCall(cursor, SYNC_PAGE_SIZE, since), db, !complete);
+                    if (syncTime == null) {
+                        syncTime = page.syncTime;
+                        serverCount = page.serverStoryCount;
+                    }
+                    changed.addAll(page.stories);
+                    cursor = page.nextCursor;
+                } while (cursor != null);
+
+                List<Integer> removed = Collections.emptyList();
+                if (complete && serverCount >= 0 && serverCount != db.countStories()) {
+                    removed = pruneDeletedStories();
+                }
+                if (syncTime != null) {
+                    db.writeSyncState(KEY_STORIES_SYNCED_AT, syncTime);
+                }
+                List<Integer> removedIds = removed;
+                mainHandler.post(() -> {
+                    if (!changed.isEmpty()) {
+                        listener.onChanged(changed);
+                    }
+                    if (!removedIds.isEmpty()) {
+                        listener.onRemoved(removedIds);
+                    }
+                });
+            } catch (IOException | JsonParseException | IllegalStateException e) {
+                Call<ResponseBody> call = syncCall;
+                if (call == null || !call.isCanceled()) {
+                    mainHandler.post(() -> listener.onError(e));
+                }
+            } finally {
+                syncCall = null;
+            }
+        });
+    }
+
+    // Lists every summary once (no chapters, so this stays small) and drops the stories the
+    // server no longer has.
+    private List<Integer> pruneDeletedStories() throws IOException {
+        Set<Integer> ids = new HashSet<>();
+        Integer cursor = null;
+        do {
+            LibraryIngestor.Page page = LibraryIngestor.ingestPage(summaryCall(cursor, SYNC_PAGE_SIZE, null), db, false);
+            for (Story story : page.stories) {
+                ids.add(story.id);
+            }
+            cursor = page.nextCursor;
+        } while (cursor != null);
+        return db.deleteStoriesNotIn(ids);
+    }
+
+    private Call<ResponseBody> summaryCall(Integer cursor, int limit, String updatedSince) {
+        Call<ResponseBody> call = RetrofitClient.getApiService().readStorySummaries(cursor, limit, updatedSince);
+        syncCall = call;
+        return call;
+    }
+
+    private boolean isLibraryComplete() {
+        return "1".equals(db.readSyncState(KEY_LIBRARY_COMPLETE));
+    }
+
+    public void cancelSync() {
+        Call<ResponseBody> call = syncCall;
+        if (call != null) {
+            call.cancel();
+        }
+    }
+
+    // --- Single stories ---
+
+    // The story with its chapters, from storage if we have an up-to-date copy, otherwise from the server.
+    public void getStory(int storyId, Callback<Story> callback) {
+        readExecutor.execute(() -> {
+            Story stored = db.readStory(storyId);
+            if (stored != null) {
+                mainHandler.post(() -> callback.onResult(stored));
+                return;
+            }
+            syncExecutor.execute(() -> fetchStory(storyId, callback));
+        });
+    }
+
+    private void fetchStory(int storyId, Callback<Story> callback) {
+        try {
+            Response<Story> response = RetrofitClient.getApiService().getStoryDetails(storyId).execute();
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("Story API Error: " + response.code());
+            }
+            Story story = response.body();
+            db.writeStories(Collections.singletonList(story));
+            mainHandler.post(() -> callback.onResult(story));
+        } catch (IOException | RuntimeException e) {
+            mainHandler.post(() -> callback.onError(e));
+        }
+    }
+
+    // The story with its chapter titles but without chapter text, from storage if we have it.
+    public void getStoryOutline(int storyId, Callback<Story> callback) {
+        readExecutor.execute(() -> {
+            Story stored = db.readStoryOutline(storyId);
+            if (stored != null) {
+                mainHandler.post(() -> callback.onResult(stored));
+                return;
+            }
+            RetrofitClient.getApiService().getStoryOutline(storyId).enqueue(new retrofit2.Callback<Story>() {
+                @Override
+                public void onResponse(Call<Story> call, Response<Story> response) {
+                    Story outline = response.body();
+                    if (!response.isSuccessful() || outline == null) {
+                        callback.onError(new IOException("Story API Error: " + response.code()));
+                        return;
+                    }
+                    if (outline.chapters == null) {
+                        outline.chapters = new ArrayList<>();
+                    }
+                    for (Chapter chapter : outline.chapters) {
+                        chapter.story_id = storyId;
+                    }
+                    callback.onResult(outline);
+                    syncExecutor.execute(() -> db.writeStoryOutline(outline));
+                }
+
+                @Override
+                public void onFailure(Call<Story> call, Throwable t) {
+                    callback.onError(t);
+                }
+            });
+        });
+    }
+
+    // One chapter of an outline with its text. Call on the main thread; concurrent requests for
+    // the same chapter share one fetch.
+    public void getChapter(int storyId, Chapter chapter, Callback<Chapter> callback) {
+        List<Callback<Chapter>> waiting = pendingChapters.get(chapter.id);
+        if (waiting != null) {
+            waiting.add(callback);
+            return;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(callback);
+        pendingChapters.put(chapter.id, waiting);
+
+        readExecutor.execute(() -> {
+            Chapter stored = db.readChapter(chapter.id);
+            if (stored != null) {
+                mainHandler.post(() -> deliverChapter(chapter.id, stored, null));
+                return;
+            }
+            RetrofitClient.getApiService().getChapter(storyId, chapter.chapter_number).enqueue(new retrofit2.Callback<Chapter>() {
+                @Override
+                public void onResponse(Call<Chapter> call, Response<Chapter> response) {
+                    Chapter fetched = response.body();
+                    if (!response.isSuccessful() || fetched == null) {
+                        deliverChapter(chapter.id, null, new IOException("Chapter API Error: " + response.code()));
+                        return;
+                    }
+                    fetched.story_id = storyId;
+                    deliverChapter(chapter.id, fetched, null);
+                    syncExecutor.execute(() -> db.writeChapterContent(fetched));
+                }
+
+                @Override
+                public void onFailure(Call<Chapter> call, Throwable t) {
+                    deliverChapter(chapter.id, null, t);
+                }
+            });
+        });
+    }
+
+    // Blocking version of getChapter for background work (PDF export). Not deduplicated.
+    public Chapter loadChapter(int storyId, Chapter chapter) throws IOException {
+        Chapter stored = db.readChapter(chapter.id);
+        if (stored != null) {
+            return stored;
+        }
+        Response<Chapter> response = RetrofitClient.getApiService().getChapter(storyId, chapter.chapter_number).execute();
+        Chapter fetched = response.body();
+        if (!response.isSuccessful() || fetched == null) {
+            throw new IOException("Chapter API Error: " + response.code());
+        }
+        fetched.story_id = storyId;
+        db.writeChapterContent(fetched);
+        return fetched;
+    }
+
+    private void deliverChapter(int chapterId, Chapter chapter, Throwable error) {
+        List<Callback<Chapter>> waiting = pendingChapters.remove(chapterId);
+        if (waiting == null) {
+            return;
+        }
+        for (Callback<Chapter> callback : waiting) {
+            if (error == null) {
+                callback.onResult(chapter);
+            } else {
+                callback.onError(error);
+            }
+        }
+    }
+
+    // Stores a story the app just created or changed, so it shows up without a sync.
+    public void putStory(Story story) {
+        if (story == null) {
+            return;
+        }
+        syncExecutor.execute(() -> db.writeStories(Collections.singletonList(story)));
+    }
+
+    // --- Profile ---
+
+    public void getProfile(Callback<UserRead> callback) {
+        loadCachedThenRefresh(KEY_PROFILE, UserRead.class,
+                () -> RetrofitClient.getApiService().readUsersMe(), callback);
+    }
+
+    public void getStats(Callback<ProfileStats> callback) {
+        loadCachedThenRefresh(KEY_STATS, ProfileStats.class,
+                () -> RetrofitClient.getApiService().getUserStats(), callback);
+    }
+
+    private interface CallFactory<T> {
+        Call<T> create();
+    }
+
+    // Delivers the cached value (if any) and then the fresh one, unless it is unchanged.
+    private <T> void loadCachedThenRefresh(String key, Class<T> type, CallFactory<T> callFactory, Callback<T> callback) {
+        readExecutor.execute(() -> {
+            String cachedJson = db.readSyncState(key);
+            if (cachedJson != null) {
+                T cached = NetworkCore.getGson().fromJson(cachedJson, type);
+                mainHandler.post(() -> callback.onResult(cached));
+            }
+            syncExecutor.execute(() -> {
+                try {
+                    Response<T> response = callFactory.create().execute();
+                    if (!response.isSuccessful() || response.body() == null) {
+                        throw new IOException("API Error: " + response.code());
+                    }
+                    T fresh = response.body();
+                    String freshJson = NetworkCore.getGson().toJson(fresh, type);
+                    if (!freshJson.equals(cachedJson)) {
+                        db.writeSyncState(key, freshJson);
+                        mainHandler.post(() -> callback.onResult(fresh));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Log.w("StoryRepository", "Could not refresh " + key, e);
+                    if (cachedJson == null) {
+                        mainHandler.post(() -> callback.onError(e));
+                    }
+                }
+            });
+        });
+    }
+
+    // Drops all local data, e.g. on logout, so the next user starts clean.
+    public void clear() {
+        cancelSync();
+        syncExecutor.execute(db::clear);
+    }
+}
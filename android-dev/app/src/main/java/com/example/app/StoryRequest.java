@@ -1,6 +1,8 @@
 package com.example.app;
 import com.google.gson.annotations.SerializedName;
 
+import java.util.List;
+
 public class StoryRequest {
     @SerializedName("ai_name")
     String aiName;
@@ -8,16 +10,36 @@ public class StoryRequest {
     @SerializedName("genre")
     String genre;
 
+    // Only the most recent part of the story (see StoryContextManager)
     @SerializedName("story_context")
     String storyContext;
 
     @SerializedName("user_input")
     String userInput;
 
+    // Compact summary of the text that no longer fits in story_context
+    @SerializedName("story_summary")
+    String storySummary;
+
+    @SerializedName("chapter_titles")
+    List<String> chapterTitles;
+
+    // Hash of storyContext, so a REPLACE can come back as edits instead of the whole text
+    @SerializedName("context_hash")
+    String contextHash;
+
     public StoryRequest(String aiName, String genre, String storyContext, String userInput) {
         this.aiName = aiName;
         this.genre = genre;
         this.storyContext = storyContext;
         this.userInput = userInput;
     }
-}
\ No newline at end of file
+
+    public StoryRequest(String aiName, String genre, String storyContext, String userInput,
+                        String storySummary, List<String> chapterTitles) {
+        this(aiName, genre, storyContext, userInput);
+        this.storySummary = storySummary;
+        this.chapterTitles = chapterTitles;
+        this.contextHash = ContentHash.of(storyContext);
+    }
+}
@@ -2,6 +2,8 @@ package com.example.app;
 
 import com.google.gson.annotations.SerializedName;
 
+import java.util.List;
+
 public class StoryResponse {
     @SerializedName("action")
     public String action;
@@ -15,4 +17,11 @@ public class StoryResponse {
     // NEW: Add the optional chapter title field
     @SerializedName("new_chapter_title")
     public String newChapterTitle;
+
+    // A REPLACE may come back as edits against the story_context whose hash is baseHash
+    @SerializedName("edits")
+    public List<StoryEdit> edits;
+
+    @SerializedName("base_hash")
+    public String baseHash;
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package com.example.app;
+
+// One recycled row of the story canvas: a single paragraph or a chapter heading.
+public class StorySegment {
+    public static final int TYPE_PARAGRAPH = 0;
+    public static final int TYPE_CHAPTER = 1;
+
+    public final long id;
+    public final int type;
+    public final StringBuilder text;
+    // Offset in the StoryDocument where this row starts
+    public final int start;
+
+    public StorySegment(long id, int type, CharSequence text, int start) {
+        this.id = id;
+        this.type = type;
+        this.text = new StringBuilder(text);
+        this.start = start;
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.app;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// The writing screen's story canvas. The story is split into paragraph and chapter rows so
+// RecyclerView only lays out what is on screen. Finished paragraphs are measured off the
+// main thread with PrecomputedTextCompat; only the paragraph being written is bound directly.
+// Text arrives through append() (usually from TypewriterRenderer), which only ever touches
+// the last row or adds new ones.
+public class StorySegmentAdapter extends RecyclerView.Adapter<StorySegmentAdapter.SegmentViewHolder> implements Appendable {
+
+    private static final Object PAYLOAD_TAIL_TEXT = new Object();
+    private static final ExecutorService precomputeExecutor = Executors.newSingleThreadExecutor();
+
+    private final List<StorySegment> segments = new ArrayList<>();
+    private long nextId = 0;
+    // Newlines we've seen at the end of the text but not yet acted on ("\n\n" starts a paragraph).
+    private int pendingNewlines = 0;
+    // How much of the document has been fed to the rows so far
+    private int documentLength = 0;
+
+    public StorySegmentAdapter() {
+        setHasStableIds(true);
+    }
+
+    @Override
+    public Appendable append(CharSequence text) {
+        return append(text, 0, text.length());
+    }
+
+    @Override
+    public Appendable append(char c) {
+        return append(String.valueOf(c));
+    }
+
+    @Override
+    public Appendable append(CharSequence text, int start, int end) {
+        int oldCount = segments.size();
+        boolean tailChanged = false;
+
+        for (int i = start; i < end; i++, documentLength++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                pendingNewlines++;
+                continue;
+            }
+            StorySegment tail = tail();
+            if (tail == null || tail.type == StorySegment.TYPE_CHAPTER || (pendingNewlines >= 2 && tail.text.length() > 0)) {
+                segments.add(new StorySegment(nextId++, StorySegment.TYPE_PARAGRAPH, "", documentLength));
+                tail = tail();
+            } else if (pendingNewlines == 1 && tail.text.length() > 0) {
+                tail.text.append('\n');
+            }
+            pendingNewlines = 0;
+            tail.text.append(c);
+            tailChanged |= segments.size() == oldCount;
+        }
+
+        if (tailChanged) {
+            notifyItemChanged(oldCount - 1, PAYLOAD_TAIL_TEXT);
+        }
+        if (segments.size() > oldCount) {
+            notifyItemRangeInserted(oldCount, segments.size() - oldCount);
+        }
+        return this;
+    }
+
+    public void addChapter(String title) {
+        segments.add(new StorySegment(nextId++, StorySegment.TYPE_CHAPTER, title, documentLength));
+        pendingNewlines = 0;
+        notifyItemInserted(segments.size() - 1);
+    }
+
+    // Re-segments the story from the row containing 'offset' to the end, after the document
+    // was edited there. Rows before it (and the scroll position) are left alone. Chapter rows
+    // come from the document's chapter index.
+    public void rebuildFrom(StoryDocument.Snapshot story, int offset) {
+        int index = segmentIndexAt(offset);
+        int rebuildStart = index <= 0 ? 0 : segments.get(index).start;
+        if (index < 0) {
+            index = 0;
+        }
+        int removed = segments.size() - index;
+        segments.subList(index, segments.size()).clear();
+        notifyItemRangeRemoved(index, removed);
+
+        documentLength = rebuildStart;
+        StorySegment previous = tail();
+        // The previous row is a finished paragraph, so the next text starts a new one.
+        pendingNewlines = previous != null && previous.type == StorySegment.TYPE_PARAGRAPH ? 2 : 0;
+
+        int from = rebuildStart;
+        for (int i = 0; i < story.getChapterCount(); i++) {
+            int chapterStart = story.getChapterStart(i);
+            if (chapterStart < rebuildStart) {
+                continue;
+            }
+            append(story.substring(from, chapterStart));
+            addChapter(story.getChapterTitle(i));
+            from = chapterStart;
+        }
+        append(story.substring(from, story.length()));
+    }
+
+    // Index of the first row starting at the last row start <= offset, or -1.
+    private int segmentIndexAt(int offset) {
+        int low = 0;
+        int high = segments.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (segments.get(mid).start <= offset) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        while (found > 0 && segments.get(found - 1).start == segments.get(found).start) {
+            found--;
+        }
+        return found;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    private StorySegment tail() {
+        return segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return segments.get(position).type;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return segments.get(position).id;
+    }
+
+    @Override
+    public int getItemCount() {
+        return segments.size();
+    }
+
+    @NonNull
+    @Override
+    public SegmentViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+        if (viewType == StorySegment.TYPE_CHAPTER) {
+            View chapterView = inflater.inflate(R.layout.item_canvas_chapter, parent, false);
+            return new SegmentViewHolder(chapterView, R.id.canvasChapterTextView);
+        }
+        View paragraphView = inflater.inflate(R.layout.item_canvas_paragraph, parent, false);
+        return new SegmentViewHolder(paragraphView, R.id.paragraphTextView);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull SegmentViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_TAIL_TEXT)) {
+            // The paragraph being written: cheap, and only this one row is re-laid out.
+            holder.textView.setText(segments.get(position).text.toString());
+            return;
+        }
+        super.onBindViewHolder(holder, position, payloads);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull SegmentViewHolder holder, int position) {
+        StorySegment segment = segments.get(position);
+        String text = segment.text.toString();
+        boolean isTail = position == segments.size() - 1;
+        if (segment.type == StorySegment.TYPE_PARAGRAPH && !isTail && holder.textView instanceof AppCompatTextView) {
+            ((AppCompatTextView) holder.textView).setTextFuture(PrecomputedTextCompat.getTextFuture(
+                    text, TextViewCompat.getTextMetricsParams(holder.textView), precomputeExecutor));
+        } else {
+            holder.textView.setText(text);
+        }
+    }
+
+    static class SegmentViewHolder extends RecyclerView.ViewHolder {
+        TextView textView;
+
+        SegmentViewHolder(@NonNull View itemView, int textViewId) {
+            super(itemView);
+            textView = itemView.findViewById(textViewId);
+        }
+    }
+}
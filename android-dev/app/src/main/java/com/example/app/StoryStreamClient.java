@@ -0,0 +1,115 @@
+package com.example.app;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import retrofit2.Call;
+import retrofit2.Response;
+
+// Reads the streaming story endpoint line by line on a background thread and
+// hands every event to the listener on the main thread as soon as it arrives.
+public class StoryStreamClient {
+
+    public interface Listener {
+        // The AI's decision is known; story text (if any) follows as fragments.
+        void onStart(String action, String newChapterTitle);
+
+        void onText(String fragment);
+
+        // The full response, including the chat message, once the stream is finished.
+        void onEnd(StoryResponse response);
+
+        void onError(Throwable t);
+    }
+
+    private static final ExecutorService streamExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static Call<ResponseBody> continueStory(StoryRequest request, Listener listener) {
+        return continueStory(request, null, listener);
+    }
+
+    // The trace (may be null) rides along as a request tag, so the OkHttp event listener can
+    // record upload/server wait/download, and this class records parsing and UI dispatch.
+    public static Call<ResponseBody> continueStory(StoryRequest request, TurnTracer.Trace trace, Listener listener) {
+        Call<ResponseBody> call = RetrofitClient.getApiService().continueStoryStream(request, trace);
+        streamExecutor.execute(() -> readStream(call, trace, listener));
+        return call;
+    }
+
+    private static void readStream(Call<ResponseBody> call, TurnTracer.Trace trace, Listener listener) {
+        try {
+            Response<ResponseBody> response = call.execute();
+            long streamStart = TurnTracer.now();
+            boolean firstText = true;
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("Story API Error: " + response.code());
+            }
+            boolean ended = false;
+            try (ResponseBody body = response.body()) {
+                BufferedSource source = body.source();
+                String line;
+                while ((line = source.readUtf8Line()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    StoryStreamEvent event = NetworkCore.getGson().fromJson(line, StoryStreamEvent.class);
+                    if (event == null || event.type == null) {
+                        continue;
+                    }
+                    if (firstText && StoryStreamEvent.TYPE_TEXT.equals(event.type)) {
+                        TurnTracer.spanUntilNow(trace, "stream.first_text", streamStart);
+                        firstText = false;
+                    }
+                    dispatch(event, trace, listener);
+                    if (StoryStreamEvent.TYPE_END.equals(event.type)) {
+                        ended = true;
+                        break;
+                    }
+                }
+            }
+            TurnTracer.spanUntilNow(trace, "stream.parse", streamStart);
+            if (!ended) {
+                throw new IOException("Story stream ended early");
+            }
+        } catch (IOException | JsonParseException e) {
+            if (!call.isCanceled()) {
+                mainHandler.post(() -> listener.onError(e));
+            }
+        }
+    }
+
+    private static void dispatch(StoryStreamEvent event, TurnTracer.Trace trace, Listener listener) {
+        switch (event.type) {
+            case StoryStreamEvent.TYPE_START:
+                long posted = TurnTracer.now();
+                mainHandler.post(() -> {
+                    // Time the main thread took to pick up the first event
+                    TurnTracer.spanUntilNow(trace, "ui.dispatch", posted);
+                    listener.onStart(event.action, event.newChapterTitle);
+                });
+                break;
+            case StoryStreamEvent.TYPE_TEXT:
+                if (event.text != null && !event.text.isEmpty()) {
+                    mainHandler.post(() -> listener.onText(event.text));
+                }
+                break;
+            case StoryStreamEvent.TYPE_END:
+                StoryResponse storyResponse = event.toStoryResponse();
+                long endPosted = TurnTracer.now();
+                mainHandler.post(() -> {
+                    TurnTracer.spanUntilNow(trace, "ui.dispatch_end", endPosted);
+                    listener.onEnd(storyResponse);
+                });
+                break;
+        }
+    }
+}
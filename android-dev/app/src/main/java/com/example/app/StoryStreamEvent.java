@@ -0,0 +1,47 @@
+package com.example.app;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.List;
+
+// One line of the api/continue_story/stream response
+public class StoryStreamEvent {
+    public static final String TYPE_START = "start";
+    public static final String TYPE_TEXT = "text";
+    public static final String TYPE_END = "end";
+
+    @SerializedName("type")
+    public String type;
+
+    @SerializedName("action")
+    public String action;
+
+    @SerializedName("text")
+    public String text;
+
+    @SerializedName("story_text")
+    public String storyText;
+
+    @SerializedName("chat_response")
+    public String chatResponse;
+
+    @SerializedName("new_chapter_title")
+    public String newChapterTitle;
+
+    @SerializedName("edits")
+    public List<StoryEdit> edits;
+
+    @SerializedName("base_hash")
+    public String baseHash;
+
+    public StoryResponse toStoryResponse() {
+        StoryResponse response = new StoryResponse();
+        response.action = action;
+        response.storyText = storyText;
+        response.chatResponse = chatResponse;
+        response.newChapterTitle = newChapterTitle;
+        response.edits = edits;
+        response.baseHash = baseHash;
+        return response;
+    }
+}
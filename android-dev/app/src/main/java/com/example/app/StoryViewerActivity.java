@@ -1,44 +1,41 @@
 package com.example.app;
 
-import android.content.Intent;
-import android.net.Uri;
 import android.os.Bundle;
-import android.os.Environment;
-import android.os.StrictMode;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
-import android.widget.ImageView;
-import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
-import androidx.core.content.FileProvider;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
-import com.itextpdf.text.Document;
-import com.itextpdf.text.Font;
-import com.itextpdf.text.Paragraph;
-import com.itextpdf.text.pdf.PdfWriter;
-import com.squareup.picasso.Picasso;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
 
+// Opens a story from its outline (chapter titles only), so opening costs the same however long
+// the story is. Chapter text is loaded when a chapter's rows come into view, with its
+// neighbours prefetched, and measured off the main thread before it is shown.
 public class StoryViewerActivity extends AppCompatActivity {
 
-    private ImageView coverImageView;
-    private TextView titleTextView;
-    private TextView storyContentTextView;
-    private Story currentStory; // Declared as a class member
+    private static final int CHAPTER_NOT_LOADED = 0;
+    private static final int CHAPTER_LOADING = 1;
+    private static final int CHAPTER_LOADED = 2;
+    private static final int CHAPTER_FAILED = 3;
+
+    private static final ExecutorService precomputeExecutor = Executors.newSingleThreadExecutor();
+
+    private StoryReaderAdapter readerAdapter;
+    private PrecomputedTextCompat.Params paragraphParams;
+    private StoryRepository storyRepository;
+    private int storyId;
+    private Story currentStory; // The outline: chapters have no content
+    private int[] chapterStates;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -52,52 +49,83 @@ public class StoryViewerActivity extends AppCompatActivity {
             getSupportActionBar().setDisplayShowTitleEnabled(false);
         }
 
-        coverImageView = findViewById(R.id.coverImageView);
-        titleTextView = findViewById(R.id.titleTextView);
-        storyContentTextView = findViewById(R.id.storyContentTextView);
+        RecyclerView readerRecyclerView = findViewById(R.id.storyReaderRecyclerView);
+        readerRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        readerAdapter = new StoryReaderAdapter(this::onChapterNeeded);
+        readerRecyclerView.setAdapter(readerAdapter);
+        paragraphParams = StoryReaderAdapter.paragraphTextParams(readerRecyclerView);
+        storyRepository = StoryRepository.getInstance(this);
 
-        int storyId = getIntent().getIntExtra("STORY_ID", -1);
+        storyId = getIntent().getIntExtra("STORY_ID", -1);
+        // The library passes the cover along, so the header shows before the story has loaded
+        readerAdapter.setHeader(null, getIntent().getStringExtra("COVER_URL"));
         if (storyId != -1) {
-            ApiService apiService = RetrofitClient.getApiService();
-            apiService.getStoryDetails(storyId).enqueue(new Callback<Story>() {
+            // Served from the local library when we have it, so this works offline
+            storyRepository.getStoryOutline(storyId, new StoryRepository.Callback<Story>() {
                 @Override
-                public void onResponse(Call<Story> call, Response<Story> response) {
-                    if (response.isSuccessful() && response.body() != null) {
-                        currentStory = response.body();
-                        titleTextView.setText(currentStory.title);
-
-                        if (currentStory.cover_image_url != null && !currentStory.cover_image_url.isEmpty()) {
-                            Picasso.get().load(currentStory.cover_image_url).into(coverImageView);
-                        }
-
-                        StringBuilder chaptersText = new StringBuilder();
-                        if (currentStory.chapters != null) {
-                            for (Chapter chapter : currentStory.chapters) {
-                                chaptersText.append("Chapter ")
-                                        .append(chapter.chapter_number)
-                                        .append(": ")
-                                        .append(chapter.title)
-                                        .append("\n\n")
-                                        .append(chapter.content)
-                                        .append("\n\n");
-                            }
-                        } else {
-                            chaptersText.append("No chapters available.");
-                        }
-                        storyContentTextView.setText(chaptersText.toString());
-                    } else {
-                        storyContentTextView.setText("Failed to load story details.");
+                public void onResult(Story story) {
+                    if (isDestroyed()) {
+                        return;
+                    }
+                    currentStory = story;
+                    readerAdapter.setHeader(story.title, story.cover_image_url);
+                    chapterStates = new int[story.chapters.size()];
+                    readerAdapter.setChapters(story.chapters);
+                    if (story.chapters.isEmpty()) {
+                        Toast.makeText(StoryViewerActivity.this, "No chapters available.", Toast.LENGTH_SHORT).show();
+                        return;
                     }
+                    loadChapter(0);
+                    loadChapter(1);
                 }
 
                 @Override
-                public void onFailure(Call<Story> call, Throwable t) {
-                    storyContentTextView.setText("Error: " + t.getMessage());
+                public void onError(Throwable t) {
+                    Log.e("StoryViewerActivity", "Error loading story", t);
+                    Toast.makeText(StoryViewerActivity.this, "Error: " + t.getMessage(), Toast.LENGTH_SHORT).show();
                 }
             });
         }
     }
 
+    // Called while binding; a chapter coming into view pulls in the chapters around it.
+    private void onChapterNeeded(int chapterIndex) {
+        loadChapter(chapterIndex);
+        loadChapter(chapterIndex + 1);
+        loadChapter(chapterIndex - 1);
+    }
+
+    private void loadChapter(int index) {
+        if (chapterStates == null || index < 0 || index >= chapterStates.length
+                || chapterStates[index] != CHAPTER_NOT_LOADED) {
+            return;
+        }
+        chapterStates[index] = CHAPTER_LOADING;
+        storyRepository.getChapter(storyId, currentStory.chapters.get(index), new StoryRepository.Callback<Chapter>() {
+            @Override
+            public void onResult(Chapter chapter) {
+                precomputeExecutor.execute(() -> {
+                    List<CharSequence> paragraphs = StoryReaderAdapter.precomputeParagraphs(chapter.content, paragraphParams);
+                    runOnUiThread(() -> {
+                        if (isDestroyed()) {
+                            return;
+                        }
+                        chapterStates[index] = CHAPTER_LOADED;
+                        readerAdapter.setChapterParagraphs(index, paragraphs);
+                    });
+                });
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // Not retried on rebind, which would loop while offline
+                chapterStates[index] = CHAPTER_FAILED;
+                Log.e("StoryViewerActivity", "Error loading chapter " + index, t);
+                readerAdapter.setChapterFailed(index);
+            }
+        });
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.story_viewer_menu, menu);
@@ -122,46 +150,7 @@ public class StoryViewerActivity extends AppCompatActivity {
     }
 
     private void exportStoryAsPdf() {
-        StrictMode.ThreadPolicy policy = new StrictMode.ThreadPolicy.Builder().permitAll().build();
-        StrictMode.setThreadPolicy(policy);
-
-        String fullStoryText = storyContentTextView.getText().toString();
-
-        try {
-            String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-            String fileName = "ScrybeStory_" + timeStamp + ".pdf";
-            File pdfDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS);
-
-            if (!pdfDir.exists()) {
-                pdfDir.mkdirs();
-            }
-
-            File pdfFile = new File(pdfDir, fileName);
-
-            Document document = new Document();
-            PdfWriter.getInstance(document, new FileOutputStream(pdfFile));
-            document.open();
-
-            Font titleFont = new Font(Font.FontFamily.TIMES_ROMAN, 22, Font.BOLD);
-            Font bodyFont = new Font(Font.FontFamily.TIMES_ROMAN, 12, Font.NORMAL);
-
-            document.add(new Paragraph(currentStory.title, titleFont));
-            document.add(new Paragraph(fullStoryText, bodyFont));
-
-            document.close();
-
-            Uri pdfUri = FileProvider.getUriForFile(this, BuildConfig.APPLICATION_ID + ".provider", pdfFile);
-
-            Intent shareIntent = new Intent(Intent.ACTION_SEND);
-            shareIntent.setType("application/pdf");
-            shareIntent.putExtra(Intent.EXTRA_STREAM, pdfUri);
-            shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-
-            startActivity(Intent.createChooser(shareIntent, "Share Story PDF"));
-
-        } catch (Exception e) {
-            Log.e("StoryViewerActivity", "Error creating or sharing PDF", e);
-            Toast.makeText(this, "Could not create or share PDF.", Toast.LENGTH_SHORT).show();
-        }
+        // Chapters the reader hasn't loaded are fetched by the export, one at a time
+        PdfExporter.exportAndShare(this, PdfExporter.fromStory(this, currentStory));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,90 @@
+package com.example.app;
+
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+// A request body that is uploaded while it is still being produced: bytes are read from 'source'
+// and sent as they arrive (chunked, no Content-Length) until the producer closes its end.
+// It can only be sent once, so OkHttp won't retry it.
+//
+// How long writes block tells EncodingPolicy about the link. That only works because the socket's
+// send buffer is small (HuggingFaceRetrofitClient): with the default one, a whole clip fits in
+// the kernel and flush() returns at once however slow the link is. Even so, up to a buffer's
+// worth may still be unsent when we return, so those bytes aren't counted as uploaded.
+public class StreamingAudioBody extends RequestBody implements Closeable {
+
+    // SO_SNDBUF for the transcription sockets; the kernel may double it
+    static final int SEND_BUFFER_BYTES = 4 * 1024;
+    private static final long CHUNK_BYTES = 2 * 1024;
+
+    private final MediaType contentType;
+    private final InputStream source;
+    private final EncodingPolicy policy;
+    // At most this much can still be in the socket when the last write returns
+    private final long unsentBytes;
+
+    public StreamingAudioBody(MediaType contentType, InputStream source) {
+        this(contentType, source, EncodingPolicy.getInstance(), 2 * SEND_BUFFER_BYTES);
+    }
+
+    StreamingAudioBody(MediaType contentType, InputStream source, EncodingPolicy policy, long unsentBytes) {
+        this.contentType = contentType;
+        this.source = source;
+        this.policy = policy;
+        this.unsentBytes = unsentBytes;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean isOneShot() {
+        return true;
+    }
+
+    @Override
+    public void writeTo(@NonNull BufferedSink sink) throws IOException {
+        long start = System.nanoTime();
+        long blockedNanos = 0;
+        long bytes = 0;
+        // Closing our end also tells the producer to stop if the upload fails
+        try (Source in = Okio.source(source)) {
+            Buffer buffer = new Buffer();
+            while (in.read(buffer, CHUNK_BYTES) != -1) {
+                long writeStart = System.nanoTime();
+                bytes += buffer.size();
+                sink.write(buffer, buffer.size());
+                // Send what we have now rather than when the sink's buffer fills
+                sink.flush();
+                blockedNanos += System.nanoTime() - writeStart;
+            }
+        }
+        // Time spent waiting on the network vs. on the audio tells EncodingPolicy about the link
+        policy.recordUpload(Math.max(0, bytes - unsentBytes), (System.nanoTime() - start) / 1_000_000,
+                blockedNanos / 1_000_000);
+    }
+
+    // For a call that failed or was cancelled before the body was written (or while it was):
+    // the producer's next write then fails instead of blocking once the pipe is full.
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
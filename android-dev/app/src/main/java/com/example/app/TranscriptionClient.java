@@ -0,0 +1,436 @@
+package com.example.app;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+import retrofit2.Call;
+import retrofit2.Response;
+
+// Transcribes audio with the Hugging Face Whisper endpoint. That endpoint is serverless: after a
+// while without traffic the model is unloaded, and requests get a 503 with an estimated_time
+// until it has loaded again. Rather than failing those, we wait about that long and send the
+// audio again. A streamed (one-shot) body is copied as it goes out, so it can be resent.
+//
+// Results are cached by a hash of the audio. A replayable body is hashed before it is sent, so
+// submitting audio that was already transcribed doesn't run the model again. A streamed body
+// can only be hashed once it has gone out, so for those (every clip VoiceCapture records) the
+// cache is only consulted before a retry. warmUp() sends a tiny clip when the writing screen
+// opens, so the model is loading while the user is still thinking.
+//
+// No Android dependencies, so it can be tested against a stand-in server on the JVM: callbacks
+// go to the Executor given (the main thread in the app, see
+// HuggingFaceRetrofitClient.getTranscriptionClient()).
+public class TranscriptionClient {
+
+    public interface Callback {
+        void onTranscribed(String text);
+
+        // The model is loading; the audio will be sent again in 'retryInMillis'.
+        void onModelLoading(long retryInMillis);
+
+        void onError(Throwable t);
+    }
+
+    // A transcription in progress.
+    public interface Transcription {
+        // Stops it, including pending retries; no more callbacks follow.
+        void cancel();
+    }
+
+    // The endpoint answered with an error that waiting doesn't fix.
+    public static class ServerException extends IOException {
+        public final int code;
+
+        ServerException(int code, String message) {
+            super("HTTP " + code + ": " + message);
+            this.code = code;
+        }
+    }
+
+    // Body of a 503 while the model loads
+    static class ModelLoading {
+        @SerializedName("error") String error;
+        @SerializedName("estimated_time") Double estimatedTime;
+    }
+
+    static final int MAX_ATTEMPTS = 6;
+    static final long MIN_RETRY_MILLIS = 250;
+    static final long MAX_RETRY_MILLIS = 20_000;
+    // Backoff when a 503 doesn't say how long to wait
+    static final long DEFAULT_RETRY_MILLIS = 2000;
+    // Don't warm up more often than this, or if a transcription succeeded this recently
+    static final long WARM_UP_INTERVAL_MILLIS = 5 * 60_000;
+    private static final int CACHE_ENTRIES = 64;
+
+    private static final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "TranscriptionRetry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final HuggingFaceApiService service;
+    private final String authorization;
+    private final Executor callbackExecutor;
+    private final Gson gson;
+
+    // Audio hash -> text, least recently used first
+    private final Map<String, String> results = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > CACHE_ENTRIES;
+        }
+    };
+    // When the model last answered, or a warm-up was last sent; 0 if never
+    private volatile long lastWarmNanos;
+
+    public TranscriptionClient(HuggingFaceApiService service, Gson gson, String authorization,
+                               Executor callbackExecutor) {
+        this.service = service;
+        this.gson = gson;
+        this.authorization = authorization;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    // Transcribes 'audio'. A replayable body is hashed first and may be answered from the cache;
+    // a streamed one is always sent, as hashing it first would mean waiting for all of it.
+    public Transcription transcribe(RequestBody audio, TurnTracer.Trace trace, Callback callback) {
+        Attempt attempt;
+        if (audio.isOneShot()) {
+            attempt = new Attempt(new CopyingBody(audio), null, trace, callback);
+        } else {
+            byte[] bytes;
+            try {
+                Buffer buffer = new Buffer();
+                audio.writeTo(buffer);
+                bytes = buffer.readByteArray();
+            } catch (IOException e) {
+                callbackExecutor.execute(() -> callback.onError(e));
+                return () -> { };
+            }
+            attempt = new Attempt(RequestBody.create(audio.contentType(), bytes), bytes, trace, callback);
+            String cached = cached(attempt.hash());
+            if (cached != null) {
+                callbackExecutor.execute(() -> callback.onTranscribed(cached));
+                return () -> { };
+            }
+        }
+        attempt.send();
+        return attempt;
+    }
+
+    // Sends a short silent clip so a cold model starts loading; skipped while it is known warm.
+    public void warmUp() {
+        long now = System.nanoTime();
+        if (lastWarmNanos != 0 && now - lastWarmNanos < TimeUnit.MILLISECONDS.toNanos(WARM_UP_INTERVAL_MILLIS)) {
+            return;
+        }
+        lastWarmNanos = now;
+        service.warmUp(authorization, RequestBody.create(MediaType.parse("audio/wav"), silentWav()))
+                .enqueue(new retrofit2.Callback<ResponseBody>() {
+                    @Override
+                    public void onResponse(@NonNull Call<ResponseBody> call, @NonNull Response<ResponseBody> response) {
+                        // Whatever the answer (a 503 while it loads), the model is on its way up
+                        if (response.body() != null) {
+                            response.body().close();
+                        }
+                        if (response.errorBody() != null) {
+                            response.errorBody().close();
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(@NonNull Call<ResponseBody> call, @NonNull Throwable t) {
+                        // Let the next screen open try again
+                        lastWarmNanos = 0;
+                    }
+                });
+    }
+
+    private String cached(String hash) {
+        synchronized (results) {
+            return results.get(hash);
+        }
+    }
+
+    private void cache(String hash, String text) {
+        synchronized (results) {
+            results.put(hash, text);
+        }
+    }
+
+    // One transcription: the first send and its retries.
+    private class Attempt implements Transcription {
+        private final TurnTracer.Trace trace;
+        private final Callback callback;
+        // The streamed body, if it is one; closed if we give up on it
+        private final CopyingBody streamed;
+        // What to send next; for a streamed first attempt, the copying wrapper
+        private RequestBody body;
+        // All of the audio, once known
+        private byte[] bytes;
+        private String hash;
+        private int attempts;
+        private boolean cancelled;
+        private Call<WhisperResponse> call;
+        private Future<?> retry;
+
+        Attempt(RequestBody body, byte[] bytes, TurnTracer.Trace trace, Callback callback) {
+            this.body = body;
+            this.streamed = body instanceof CopyingBody ? (CopyingBody) body : null;
+            this.bytes = bytes;
+            this.trace = trace;
+            this.callback = callback;
+        }
+
+        String hash() {
+            if (hash == null) {
+                hash = ContentHash.of(bytes);
+            }
+            return hash;
+        }
+
+        synchronized void send() {
+            if (cancelled) {
+                return;
+            }
+            attempts++;
+            call = service.transcribeAudio(authorization, body, trace);
+            call.enqueue(new retrofit2.Callback<WhisperResponse>() {
+                @Override
+                public void onResponse(@NonNull Call<WhisperResponse> call, @NonNull Response<WhisperResponse> response) {
+                    handleResponse(response);
+                }
+
+                @Override
+                public void onFailure(@NonNull Call<WhisperResponse> call, @NonNull Throwable t) {
+                    if (!call.isCanceled()) {
+                        deliverError(t);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public synchronized void cancel() {
+            cancelled = true;
+            if (call != null) {
+                call.cancel();
+            }
+            if (retry != null) {
+                retry.cancel(false);
+            }
+            closeStream();
+        }
+
+        // The call may have ended before the body was written, e.g. on a connect failure; its
+        // producer must not be left writing into a stream nobody reads.
+        private void closeStream() {
+            if (streamed != null) {
+                streamed.closeSource();
+            }
+        }
+
+        private void handleResponse(Response<WhisperResponse> response) {
+            if (response.isSuccessful() && response.body() != null) {
+                lastWarmNanos = System.nanoTime();
+                String text = response.body().text;
+                if (capturedAudio()) {
+                    cache(hash(), text);
+                }
+                deliver(() -> callback.onTranscribed(text));
+                return;
+            }
+            String error = errorText(response);
+            ModelLoading loading = response.code() == 503 ? parseLoading(error) : null;
+            if (loading == null) {
+                deliverError(new ServerException(response.code(), error));
+                return;
+            }
+            if (!capturedAudio()) {
+                deliverError(new ServerException(503, "model loading, and the audio can't be sent again"));
+                return;
+            }
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                if (attempts >= MAX_ATTEMPTS) {
+                    deliverError(new ServerException(503, "model still loading after " + attempts + " attempts"));
+                    return;
+                }
+                long delay = retryDelayMillis(loading);
+                deliver(() -> callback.onModelLoading(delay));
+                retry = retryScheduler.schedule(this::resend, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        // Another transcription of the same audio may have finished in the meantime.
+        private void resend() {
+            String cached = cached(hash());
+            if (cached != null) {
+                deliver(() -> callback.onTranscribed(cached));
+                return;
+            }
+            send();
+        }
+
+        // Whether all of the audio is at hand to hash and resend; from here on it is sent as bytes.
+        private synchronized boolean capturedAudio() {
+            if (bytes == null && body instanceof CopyingBody) {
+                bytes = ((CopyingBody) body).copy();
+                if (bytes != null) {
+                    body = RequestBody.create(body.contentType(), bytes);
+                }
+            }
+            return bytes != null;
+        }
+
+        private void deliverError(Throwable t) {
+            closeStream();
+            deliver(() -> callback.onError(t));
+        }
+
+        private void deliver(Runnable delivery) {
+            callbackExecutor.execute(() -> {
+                synchronized (this) {
+                    if (cancelled) {
+                        return;
+                    }
+                }
+                delivery.run();
+            });
+        }
+    }
+
+    private long retryDelayMillis(ModelLoading loading) {
+        if (loading.estimatedTime == null) {
+            return DEFAULT_RETRY_MILLIS;
+        }
+        long estimated = Math.round(loading.estimatedTime * 1000);
+        return Math.max(MIN_RETRY_MILLIS, Math.min(MAX_RETRY_MILLIS, estimated));
+    }
+
+    // The 503 body if it says the model is loading, else null (a plain outage).
+    private ModelLoading parseLoading(String error) {
+        try {
+            ModelLoading loading = gson.fromJson(error, ModelLoading.class);
+            if (loading != null && (loading.estimatedTime != null
+                    || (loading.error != null && loading.error.toLowerCase(Locale.US).contains("loading")))) {
+                return loading;
+            }
+        } catch (JsonParseException e) {
+            // Not the loading message
+        }
+        return null;
+    }
+
+    private static String errorText(Response<?> response) {
+        ResponseBody errorBody = response.errorBody();
+        if (errorBody == null) {
+            return "";
+        }
+        try {
+            return errorBody.string();
+        } catch (IOException e) {
+            return "";
+        } finally {
+            errorBody.close();
+        }
+    }
+
+    // A tenth of a second of 16 kHz mono silence as WAV: the smallest thing the model accepts.
+    static byte[] silentWav() {
+        int dataBytes = EncodingPolicy.SAMPLE_RATE / 10 * 2;
+        ByteBuffer wav = ByteBuffer.allocate(44 + dataBytes).order(ByteOrder.LITTLE_ENDIAN);
+        wav.putInt(0x46464952).putInt(36 + dataBytes).putInt(0x45564157);          // RIFF, WAVE
+        wav.putInt(0x20746d66).putInt(16).putShort((short) 1).putShort((short) 1);  // fmt, PCM, mono
+        wav.putInt(EncodingPolicy.SAMPLE_RATE).putInt(EncodingPolicy.SAMPLE_RATE * 2);
+        wav.putShort((short) 2).putShort((short) 16);
+        wav.putInt(0x61746164).putInt(dataBytes);                                   // data
+        return wav.array();
+    }
+
+    // Sends a one-shot body and keeps a copy of what went out, so it can be sent again.
+    private static final class CopyingBody extends RequestBody {
+        private final RequestBody delegate;
+        private final Buffer copy = new Buffer();
+        private boolean complete;
+
+        CopyingBody(RequestBody delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(@NonNull BufferedSink sink) throws IOException {
+            BufferedSink copying = Okio.buffer(new ForwardingSink(sink) {
+                @Override
+                public void write(@NonNull Buffer source, long byteCount) throws IOException {
+                    synchronized (copy) {
+                        source.copyTo(copy, 0, byteCount);
+                    }
+                    super.write(source, byteCount);
+                }
+            });
+            delegate.writeTo(copying);
+            copying.emit();
+            synchronized (copy) {
+                complete = true;
+            }
+        }
+
+        void closeSource() {
+            if (delegate instanceof Closeable) {
+                try {
+                    ((Closeable) delegate).close();
+                } catch (IOException e) {
+                    // Closing is all we wanted
+                }
+            }
+        }
+
+        // All bytes that were sent, or null if the body wasn't sent completely.
+        byte[] copy() {
+            synchronized (copy) {
+                return complete ? copy.readByteArray() : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.app;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Protocol;
+import okhttp3.Request;
+
+// Splits a traced call into connect, upload, server wait and download spans. Created by
+// NetworkMetrics.eventListenerFactory() for calls tagged with a TurnTracer.Trace (via Retrofit's
+// @Tag); it counts their bytes like any other call's.
+public class TurnTraceEventListener extends NetworkMetrics.WireBytesListener {
+
+    private final TurnTracer.Trace trace;
+    private final String prefix;
+    private long callStart;
+    private long dnsStart;
+    private long connectStart;
+    private long uploadStart;
+    private long uploadEnd;
+    private long downloadStart;
+
+    TurnTraceEventListener(TurnTracer.Trace trace, String endpoint) {
+        super(endpoint);
+        this.trace = trace;
+        this.prefix = endpoint + ".";
+    }
+
+    @Override
+    public void callStart(@NonNull Call call) {
+        callStart = TurnTracer.now();
+    }
+
+    @Override
+    public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+        dnsStart = TurnTracer.now();
+    }
+
+    @Override
+    public void dnsEnd(@NonNull Call call, @NonNull String domainName, @NonNull List<InetAddress> inetAddressList) {
+        TurnTracer.spanUntilNow(trace, prefix + "dns", dnsStart);
+    }
+
+    @Override
+    public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy) {
+        connectStart = TurnTracer.now();
+    }
+
+    @Override
+    public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy, Protocol protocol) {
+        TurnTracer.spanUntilNow(trace, prefix + "connect", connectStart);
+    }
+
+    @Override
+    public void requestHeadersStart(@NonNull Call call) {
+        uploadStart = TurnTracer.now();
+        uploadEnd = 0;
+    }
+
+    @Override
+    public void requestHeadersEnd(@NonNull Call call, @NonNull Request request) {
+        uploadEnd = TurnTracer.now();
+    }
+
+    @Override
+    public void requestBodyEnd(@NonNull Call call, long byteCount) {
+        super.requestBodyEnd(call, byteCount);
+        uploadEnd = TurnTracer.now();
+    }
+
+    @Override
+    public void responseHeadersStart(@NonNull Call call) {
+        long now = TurnTracer.now();
+        TurnTracer.span(trace, prefix + "upload", uploadStart, uploadEnd);
+        TurnTracer.span(trace, prefix + "server_wait", uploadEnd, now);
+    }
+
+    @Override
+    public void responseBodyStart(@NonNull Call call) {
+        downloadStart = TurnTracer.now();
+    }
+
+    @Override
+    public void responseBodyEnd(@NonNull Call call, long byteCount) {
+        super.responseBodyEnd(call, byteCount);
+        TurnTracer.spanUntilNow(trace, prefix + "download", downloadStart);
+    }
+
+    @Override
+    public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+        // Failures before the request was written (DNS, connect) span the whole call
+        TurnTracer.spanUntilNow(trace, prefix + "failed", uploadStart != 0 ? uploadStart : callStart);
+    }
+}
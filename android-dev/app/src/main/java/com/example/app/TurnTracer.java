@@ -0,0 +1,104 @@
+package com.example.app;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Lightweight tracing for story turns. A Trace is started when the user starts giving input and
+// is handed along (through callbacks, and as a request tag to OkHttp) until the answer is fully
+// rendered. Spans go into a fixed-size ring buffer, which exports as Chrome/Perfetto trace JSON
+// (load it in ui.perfetto.dev or chrome://tracing).
+public class TurnTracer {
+
+    public static final class Trace {
+        public final int id;
+        final long startNanos;
+        private boolean ended = false;
+
+        Trace(int id, long startNanos) {
+            this.id = id;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private static final int CAPACITY = 2048;
+    private static final AtomicInteger nextTraceId = new AtomicInteger(1);
+
+    // Ring buffer of completed spans, kept as parallel arrays so recording doesn't allocate.
+    private static final String[] names = new String[CAPACITY];
+    private static final int[] traceIds = new int[CAPACITY];
+    private static final long[] startNanos = new long[CAPACITY];
+    private static final long[] durationNanos = new long[CAPACITY];
+    private static final long[] threadIds = new long[CAPACITY];
+    private static long written = 0;
+
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    public static Trace beginTurn() {
+        return beginTurn(now());
+    }
+
+    public static Trace beginTurn(long startNanos) {
+        return new Trace(nextTraceId.getAndIncrement(), startNanos);
+    }
+
+    public static void span(Trace trace, String name, long start, long end) {
+        if (trace == null) {
+            return;
+        }
+        long threadId = Thread.currentThread().getId();
+        synchronized (TurnTracer.class) {
+            int slot = (int) (written % CAPACITY);
+            names[slot] = name;
+            traceIds[slot] = trace.id;
+            startNanos[slot] = start;
+            durationNanos[slot] = Math.max(0, end - start);
+            threadIds[slot] = threadId;
+            written++;
+        }
+    }
+
+    // Records a span from 'start' until now.
+    public static void spanUntilNow(Trace trace, String name, long start) {
+        span(trace, name, start, now());
+    }
+
+    // Closes the whole turn (input to rendered text). Only the first call counts.
+    public static void endTurn(Trace trace) {
+        if (trace == null) {
+            return;
+        }
+        synchronized (trace) {
+            if (trace.ended) {
+                return;
+            }
+            trace.ended = true;
+        }
+        spanUntilNow(trace, "turn", trace.startNanos);
+    }
+
+    public static synchronized void clear() {
+        written = 0;
+    }
+
+    // {"traceEvents": [...]} with one complete ("X") event per span, timestamps in microseconds.
+    public static String toChromeTraceJson() {
+        StringBuilder sb = new StringBuilder("{\"traceEvents\":[");
+        synchronized (TurnTracer.class) {
+            long first = Math.max(0, written - CAPACITY);
+            for (long i = first; i < written; i++) {
+                int slot = (int) (i % CAPACITY);
+                if (i > first) {
+                    sb.append(',');
+                }
+                sb.append("{\"name\":").append(NetworkCore.getGson().toJson(names[slot]))
+                        .append(",\"cat\":\"turn\",\"ph\":\"X\",\"pid\":1")
+                        .append(",\"tid\":").append(threadIds[slot])
+                        .append(",\"ts\":").append(startNanos[slot] / 1000)
+                        .append(",\"dur\":").append(durationNanos[slot] / 1000)
+                        .append(",\"args\":{\"turn\":").append(traceIds[slot]).append("}}");
+            }
+        }
+        return sb.append("],\"displayTimeUnit\":\"ms\"}").toString();
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.app;
+
+import java.io.IOException;
+
+// Reveals queued story text a few characters per display frame.
+// Text is only ever appended to the target (the TextView's own Editable), so each frame
+// costs the characters it reveals plus a relayout of the last paragraph, no matter how
+// long the story already is. Frames come from a FrameScheduler (Choreographer on device).
+public class TypewriterRenderer {
+
+    public interface FrameListener {
+        void onFrame(long frameTimeNanos);
+    }
+
+    public interface FrameScheduler {
+        void scheduleFrame(FrameListener listener);
+
+        void cancelFrame(FrameListener listener);
+    }
+
+    public static final int DEFAULT_CHARS_PER_SECOND = 200; // same pace as the old 5 ms per char
+    public static final int DEFAULT_MAX_CHARS_PER_FRAME = 64;
+
+    // When more than this much text (at the configured rate) is waiting, e.g. from a fast stream,
+    // it is revealed CATCH_UP_FACTOR times faster until the backlog is back under it.
+    private static final int CATCH_UP_AFTER_MILLIS = 1000;
+    private static final int CATCH_UP_FACTOR = 3;
+    private static final long NANOS_PER_FRAME = 16_666_667L;
+
+    private final Appendable target;
+    private final FrameScheduler scheduler;
+    private final int charsPerSecond;
+    private final int maxCharsPerFrame;
+    private final FrameListener frameListener = this::onFrame;
+
+    private final StringBuilder pending = new StringBuilder();
+    private int pendingStart = 0;
+
+    private long lastFrameTimeNanos = 0;
+    private double carry = 0;
+    private boolean frameScheduled = false;
+    private boolean paused = false;
+    private Runnable onIdleListener;
+
+    public TypewriterRenderer(Appendable target, FrameScheduler scheduler) {
+        this(target, scheduler, DEFAULT_CHARS_PER_SECOND, DEFAULT_MAX_CHARS_PER_FRAME);
+    }
+
+    public TypewriterRenderer(Appendable target, FrameScheduler scheduler, int charsPerSecond, int maxCharsPerFrame) {
+        this.target = target;
+        this.scheduler = scheduler;
+        this.charsPerSecond = charsPerSecond;
+        this.maxCharsPerFrame = maxCharsPerFrame;
+    }
+
+    // Called every time the queue has been fully revealed.
+    public void setOnIdleListener(Runnable onIdleListener) {
+        this.onIdleListener = onIdleListener;
+    }
+
+    public void enqueue(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return;
+        }
+        pending.append(text);
+        scheduleIfNeeded();
+    }
+
+    // Writes out everything that is still queued right away (before edits that must see the full text).
+    public void flush() {
+        if (pendingLength() > 0) {
+            write(pending, pendingStart, pending.length());
+            clearPending();
+        }
+        cancelFrame();
+    }
+
+    public void pause() {
+        paused = true;
+        cancelFrame();
+    }
+
+    public void resume() {
+        paused = false;
+        scheduleIfNeeded();
+    }
+
+    public boolean isIdle() {
+        return pendingLength() == 0;
+    }
+
+    int pendingLength() {
+        return pending.length() - pendingStart;
+    }
+
+    private void onFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        if (paused) {
+            return;
+        }
+        long elapsed = lastFrameTimeNanos == 0 ? NANOS_PER_FRAME : frameTimeNanos - lastFrameTimeNanos;
+        lastFrameTimeNanos = frameTimeNanos;
+
+        int count = charsForFrame(elapsed);
+        int end = pendingStart + count;
+        // Never split a surrogate pair across frames.
+        if (end < pending.length() && Character.isHighSurrogate(pending.charAt(end - 1))) {
+            end++;
+        }
+        write(pending, pendingStart, end);
+        pendingStart = end;
+
+        if (pendingLength() == 0) {
+            clearPending();
+            lastFrameTimeNanos = 0;
+            if (onIdleListener != null) {
+                onIdleListener.run();
+            }
+        } else {
+            if (pendingStart > 4096 && pendingStart > pending.length() / 2) {
+                pending.delete(0, pendingStart);
+                pendingStart = 0;
+            }
+            scheduleIfNeeded();
+        }
+    }
+
+    int charsForFrame(long elapsedNanos) {
+        // Long gaps (e.g. a dropped frame) shouldn't dump a whole paragraph at once.
+        long clamped = Math.min(Math.max(elapsedNanos, 0), 4 * NANOS_PER_FRAME);
+        int available = pendingLength();
+        double rate = charsPerSecond;
+        if (available > (long) charsPerSecond * CATCH_UP_AFTER_MILLIS / 1000) {
+            rate *= CATCH_UP_FACTOR;
+        }
+        carry += clamped * rate / 1_000_000_000L;
+        int count = (int) carry;
+        carry -= count;
+
+        count = Math.max(count, 1);
+        return Math.min(Math.min(count, maxCharsPerFrame), available);
+    }
+
+    private void write(CharSequence text, int start, int end) {
+        try {
+            target.append(text, start, end);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void clearPending() {
+        pending.setLength(0);
+        pendingStart = 0;
+        carry = 0;
+    }
+
+    private void scheduleIfNeeded() {
+        if (!paused && !frameScheduled && pendingLength() > 0) {
+            frameScheduled = true;
+            scheduler.scheduleFrame(frameListener);
+        }
+    }
+
+    private void cancelFrame() {
+        if (frameScheduled) {
+            scheduler.cancelFrame(frameListener);
+            frameScheduled = false;
+        }
+        lastFrameTimeNanos = 0;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.app;
+
+// Frame-by-frame speech/non-speech decision on 16-bit PCM from two cheap features:
+//   - energy (RMS in dBFS), compared with an adaptive noise floor
+//   - zero-crossing rate, which is high for hiss and broadband noise and low for voiced speech
+// A frame is speech when it is loud enough in absolute terms, clearly above the noise floor, and
+// not noise-like (high ZCR), unless it is loud enough that ZCR doesn't matter (fricatives).
+// Plain Java with no allocation per frame, so it runs on the capture thread and in JVM tests.
+public class VoiceActivityDetector {
+
+    public static final int DEFAULT_FRAME_MILLIS = 20;
+
+    // Speech must be this far above the noise floor
+    private static final double SPEECH_MARGIN_DB = 10;
+    // ... and above this absolute level
+    private static final double MIN_SPEECH_DBFS = -50;
+    // Zero crossings per sample above which a quiet frame counts as noise
+    private static final double MAX_VOICED_ZCR = 0.25;
+    // The floor is calibrated on the first frames; a press usually starts before the speech
+    private static final int CALIBRATION_FRAMES = 5;
+    // Upper bound for the calibrated floor, in case the user was already talking
+    private static final double MAX_INITIAL_FLOOR_DBFS = -45;
+    private static final double SILENCE_DBFS = -96;
+
+    private final int frameSize;
+    private double noiseFloorDb = Double.MAX_VALUE;
+    private int framesSeen;
+    private double lastEnergyDb;
+    private double lastZeroCrossingRate;
+
+    public VoiceActivityDetector(int sampleRate) {
+        this(sampleRate, DEFAULT_FRAME_MILLIS);
+    }
+
+    public VoiceActivityDetector(int sampleRate, int frameMillis) {
+        this.frameSize = sampleRate * frameMillis / 1000;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    // Classifies the frame of getFrameSize() samples starting at 'offset'.
+    public boolean isSpeech(short[] pcm, int offset) {
+        long sumSquares = 0;
+        int crossings = 0;
+        boolean previousNegative = pcm[offset] < 0;
+        for (int i = offset; i < offset + frameSize; i++) {
+            int sample = pcm[i];
+            sumSquares += (long) sample * sample;
+            boolean negative = sample < 0;
+            if (negative != previousNegative) {
+                crossings++;
+            }
+            previousNegative = negative;
+        }
+        double rms = Math.sqrt((double) sumSquares / frameSize);
+        lastEnergyDb = rms < 1 ? SILENCE_DBFS : 20 * Math.log10(rms / 32768.0);
+        lastZeroCrossingRate = (double) crossings / frameSize;
+
+        if (framesSeen < CALIBRATION_FRAMES) {
+            framesSeen++;
+            noiseFloorDb = Math.min(noiseFloorDb, Math.min(lastEnergyDb, MAX_INITIAL_FLOOR_DBFS));
+            if (framesSeen < CALIBRATION_FRAMES) {
+                return false;
+            }
+        }
+
+        double aboveFloor = lastEnergyDb - noiseFloorDb;
+        boolean speech = lastEnergyDb > MIN_SPEECH_DBFS
+                && aboveFloor > SPEECH_MARGIN_DB
+                && (lastZeroCrossingRate < MAX_VOICED_ZCR || aboveFloor > 2 * SPEECH_MARGIN_DB);
+        updateNoiseFloor(speech);
+        return speech;
+    }
+
+    // Falls quickly to quieter frames; rises quickly with steady non-speech (the room got
+    // louder) and only very slowly during speech, so a wrong calibration still recovers.
+    private void updateNoiseFloor(boolean speech) {
+        double difference = lastEnergyDb - noiseFloorDb;
+        if (difference < 0) {
+            noiseFloorDb += difference * 0.5;
+        } else if (!speech) {
+            noiseFloorDb += difference * 0.1;
+        } else {
+            noiseFloorDb += Math.min(difference, 0.02);
+        }
+    }
+
+    public double getLastEnergyDb() {
+        return lastEnergyDb;
+    }
+
+    public double getLastZeroCrossingRate() {
+        return lastZeroCrossingRate;
+    }
+
+    public double getNoiseFloorDb() {
+        return noiseFloorDb;
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.app;
+
+import android.annotation.SuppressLint;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.IOException;
+
+import okhttp3.RequestBody;
+
+// Records the microphone as raw PCM and only passes on what the user said: a SpeechSegmenter
+// drops the silence and splits the clip at pauses, and each voiced segment is encoded to AAC
+// into its own pipe, whose read end is handed out as a request body as soon as the segment
+// starts. So segments are uploaded while they are spoken, and silence is never encoded or sent.
+//
+// The microphone is opened ahead of time: prepare() (when the writing screen is shown) starts a
+// session on a background thread that records into a short pre-roll ring. start() and stop()
+// only flag the session, so pressing the button costs the UI thread nothing, and a clip begins
+// with the pre-roll, so the first syllable isn't lost to the press. release() (when the screen
+// is paused) closes the microphone.
+public class VoiceCapture {
+
+    public interface Listener {
+        // A voiced segment started; 'audio' yields it until the segment ends. Main thread.
+        void onSegment(int index, RequestBody audio);
+        // Capture has stopped after stop(); there were 'segmentCount' segments. Main thread.
+        void onFinished(int segmentCount);
+        // Capture failed; onFinished won't follow. Main thread.
+        void onError(Exception e);
+    }
+
+    private static final int SAMPLE_RATE = EncodingPolicy.SAMPLE_RATE;
+    // Audio from before the press that a clip starts with
+    private static final int PRE_ROLL_MILLIS = 500;
+    // Room for the encoder to fall behind the microphone for a moment
+    private static final int RECORD_BUFFER_MILLIS = 500;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // The clip the user wants recorded, or null; the session thread follows it
+    private volatile Listener requestedClip;
+    private Session session;
+    // The session release() stopped. Its thread may still be finishing a clip with the microphone
+    // open, so the next session is handed it and waits for it before opening its own: two
+    // AudioRecords at once fail or record silence on some devices.
+    private Session releasing;
+
+    // Opens the microphone in the background and keeps the pre-roll filled. Main thread;
+    // the caller has checked RECORD_AUDIO.
+    public void prepare() {
+        if (session != null && session.running) {
+            return;
+        }
+        // After release() that is the released session; otherwise one that failed
+        session = new Session(session != null ? session : releasing);
+        releasing = null;
+        session.thread = new Thread(session, "VoiceCapture");
+        session.thread.start();
+    }
+
+    // Closes the microphone; a clip still being recorded is finished first. Main thread.
+    public void release() {
+        requestedClip = null;
+        if (session != null) {
+            session.running = false;
+            releasing = session;
+            session = null;
+        }
+    }
+
+    // Starts a clip. Main thread; returns at once.
+    public void start(Listener listener) {
+        requestedClip = listener;
+        // In case preparing failed or the screen didn't prepare
+        prepare();
+    }
+
+    // Ends the clip; the open segment is closed and onFinished follows.
+    public void stop() {
+        requestedClip = null;
+    }
+
+    public boolean isCapturing() {
+        return requestedClip != null;
+    }
+
+    // One opening of the microphone, from prepare() to release() or a failure.
+    private class Session implements Runnable {
+        volatile boolean running = true;
+        // A session being released may still hold the microphone; wait for it
+        private Session previous;
+        Thread thread;
+
+        private final short[] frame;
+        private final short[] preRoll;
+        private final int preRollFrames;
+        private int preRollStart;
+        private int preRollCount;
+
+        // The clip being recorded on this thread
+        private Listener clip;
+        private SpeechSegmenter segmenter;
+        private SegmentEncoder encoder;
+
+        Session(Session previous) {
+            this.previous = previous;
+            int frameSize = new VoiceActivityDetector(SAMPLE_RATE).getFrameSize();
+            this.frame = new short[frameSize];
+            this.preRollFrames = PRE_ROLL_MILLIS / VoiceActivityDetector.DEFAULT_FRAME_MILLIS;
+            this.preRoll = new short[preRollFrames * frameSize];
+        }
+
+        @Override
+        public void run() {
+            if (previous != null) {
+                awaitPrevious();
+            }
+            AudioRecord record;
+            try {
+                record = openMicrophone();
+            } catch (RuntimeException e) {
+                Log.e("VoiceCapture", "Could not open the microphone", e);
+                running = false;
+                Listener waiting = requestedClip;
+                if (waiting != null) {
+                    requestedClip = null;
+                    mainHandler.post(() -> waiting.onError(e));
+                }
+                return;
+            }
+            try {
+                while (running) {
+                    readFrame(record, frame);
+                    Listener requested = requestedClip;
+                    if (clip != null && clip != requested) {
+                        finishClip();
+                    }
+                    if (clip == null && requested != null) {
+                        beginClip(requested);
+                    }
+                    if (clip != null) {
+                        segmenter.process(frame, 0);
+                    } else {
+                        rememberPreRoll();
+                    }
+                }
+                if (clip != null) {
+                    finishClip();
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.e("VoiceCapture", "Capture failed", e);
+                running = false;
+                if (clip != null) {
+                    Listener failed = clip;
+                    encoder.abort();
+                    clip = null;
+                    if (requestedClip == failed) {
+                        requestedClip = null;
+                    }
+                    mainHandler.post(() -> failed.onError(e));
+                }
+            } finally {
+                record.stop();
+                record.release();
+            }
+        }
+
+        private void awaitPrevious() {
+            Thread previousThread = previous.thread;
+            previous = null;
+            try {
+                previousThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @SuppressLint("MissingPermission")
+        private AudioRecord openMicrophone() {
+            int bufferBytes = Math.max(SAMPLE_RATE * 2 * RECORD_BUFFER_MILLIS / 1000, AudioRecord.getMinBufferSize(
+                    SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT));
+            AudioRecord record = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, SAMPLE_RATE,
+                    AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, bufferBytes);
+            if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+                record.release();
+                throw new IllegalStateException("Microphone unavailable");
+            }
+            record.startRecording();
+            return record;
+        }
+
+        // Starts a clip with the pre-roll; the segmenter drops it again if it's only silence.
+        private void beginClip(Listener listener) {
+            EncodingPolicy policy = EncodingPolicy.getInstance();
+            EncodingPolicy.Profile profile = policy.choose();
+            Log.i("VoiceCapture", "Encoding clip as " + profile + "; " + policy.describe());
+            clip = listener;
+            encoder = new SegmentEncoder(profile, listener);
+            segmenter = new SpeechSegmenter(new VoiceActivityDetector(SAMPLE_RATE), SAMPLE_RATE, encoder);
+            for (int i = 0; i < preRollCount; i++) {
+                int slot = (preRollStart + i) % preRollFrames;
+                segmenter.process(preRoll, slot * frame.length);
+            }
+            preRollStart = 0;
+            preRollCount = 0;
+        }
+
+        private void finishClip() {
+            segmenter.finish();
+            int segmentCount = segmenter.getSegmentCount();
+            Listener finished = clip;
+            mainHandler.post(() -> finished.onFinished(segmentCount));
+            clip = null;
+            segmenter = null;
+            encoder = null;
+        }
+
+        private void rememberPreRoll() {
+            int slot;
+            if (preRollCount < preRollFrames) {
+                slot = (preRollStart + preRollCount) % preRollFrames;
+                preRollCount++;
+            } else {
+                slot = preRollStart;
+                preRollStart = (preRollStart + 1) % preRollFrames;
+            }
+            System.arraycopy(frame, 0, preRoll, slot * frame.length, frame.length);
+        }
+    }
+
+    private static void readFrame(AudioRecord record, short[] frame) throws IOException {
+        int filled = 0;
+        while (filled < frame.length) {
+            int read = record.read(frame, filled, frame.length - filled);
+            if (read < 0) {
+                throw new IOException("AudioRecord.read failed: " + read);
+            }
+            filled += read;
+        }
+    }
+
+    // Encodes each segment into a pipe whose read end is the segment's upload body.
+    private class SegmentEncoder implements SpeechSegmenter.Listener {
+        private final EncodingPolicy.Profile profile;
+        private final Listener listener;
+        private AdtsAacEncoder encoder;
+
+        SegmentEncoder(EncodingPolicy.Profile profile, Listener listener) {
+            this.profile = profile;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onSegmentStart(int index) {
+            try {
+                ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
+                encoder = new AdtsAacEncoder(profile.sampleRate, profile.channels, profile.bitRate,
+                        new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]));
+                RequestBody audio = new StreamingAudioBody(AdtsAacEncoder.CONTENT_TYPE,
+                        new ParcelFileDescriptor.AutoCloseInputStream(pipe[0]));
+                mainHandler.post(() -> listener.onSegment(index, audio));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not start segment encoder", e);
+            }
+        }
+
+        @Override
+        public void onAudio(short[] pcm, int offset, int length) {
+            if (encoder == null) {
+                return;
+            }
+            try {
+                encoder.encode(pcm, offset, length);
+            } catch (IOException e) {
+                // The upload closed its end (failed or cancelled); drop the rest of the segment
+                Log.w("VoiceCapture", "Segment upload went away", e);
+                abort();
+            }
+        }
+
+        @Override
+        public void onSegmentEnd(int index) {
+            if (encoder == null) {
+                return;
+            }
+            try {
+                encoder.finish();
+            } catch (IOException e) {
+                Log.w("VoiceCapture", "Could not finish segment " + index, e);
+            }
+            encoder = null;
+        }
+
+        void abort() {
+            if (encoder != null) {
+                encoder.release();
+                encoder = null;
+            }
+        }
+    }
+}
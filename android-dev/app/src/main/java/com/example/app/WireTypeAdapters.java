@@ -0,0 +1,679 @@
+package com.example.app;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Hand-written streaming adapters for the wire models, registered on NetworkCore's Gson.
+// Gson would otherwise bind each model by reflection the first time it is used, which shows up
+// in startup time and makes parsing a large List<Story> slower and allocate more.
+// Behaviour matches the reflective path: names come from the @SerializedName values, unknown
+// fields are skipped, null fields are left out when writing.
+// When a field is added to a model it has to be added here too (WireTypeAdaptersTest checks
+// every model against the reflective output).
+public final class WireTypeAdapters {
+
+    public static final TypeAdapterFactory FACTORY = new TypeAdapterFactory() {
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            Class<? super T> raw = type.getRawType();
+            TypeAdapter<?> adapter = null;
+            if (raw == Story.class) adapter = STORY;
+            else if (raw == Chapter.class) adapter = CHAPTER;
+            else if (raw == StoryRequest.class) adapter = STORY_REQUEST;
+            else if (raw == StoryResponse.class) adapter = STORY_RESPONSE;
+            else if (raw == StoryStreamEvent.class) adapter = STORY_STREAM_EVENT;
+            else if (raw == StoryEdit.class) adapter = STORY_EDIT;
+            else if (raw == FullStoryCreate.class) adapter = FULL_STORY_CREATE;
+            else if (raw == User.class) adapter = USER;
+            else if (raw == UserRead.class) adapter = USER_READ;
+            else if (raw == OtpVerify.class) adapter = OTP_VERIFY;
+            else if (raw == Token.class) adapter = TOKEN;
+            else if (raw == GoogleToken.class) adapter = GOOGLE_TOKEN;
+            else if (raw == ApiService.AiNameUpdate.class) adapter = AI_NAME_UPDATE;
+            else if (raw == ProfileStats.class) adapter = PROFILE_STATS;
+            else if (raw == WhisperResponse.class) adapter = WHISPER_RESPONSE;
+            return (TypeAdapter<T>) adapter;
+        }
+    };
+
+    private WireTypeAdapters() {
+    }
+
+    // --- Story library ---
+
+    static final TypeAdapter<Chapter> CHAPTER = new TypeAdapter<Chapter>() {
+        @Override
+        public void write(JsonWriter out, Chapter value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(value.id);
+            out.name("chapter_number").value(value.chapter_number);
+            out.name("title").value(value.title);
+            out.name("content").value(value.content);
+            out.name("story_id").value(value.story_id);
+            out.endObject();
+        }
+
+        @Override
+        public Chapter read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Chapter chapter = new Chapter(0, null, null);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id": chapter.id = readInt(in, chapter.id); break;
+                    case "chapter_number": chapter.chapter_number = readInt(in, chapter.chapter_number); break;
+                    case "title": chapter.title = readString(in); break;
+                    case "content": chapter.content = readString(in); break;
+                    case "story_id": chapter.story_id = readInt(in, chapter.story_id); break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            return chapter;
+        }
+    };
+
+    static final TypeAdapter<Story> STORY = new TypeAdapter<Story>() {
+        @Override
+        public void write(JsonWriter out, Story value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(value.id);
+            out.name("title").value(value.title);
+            out.name("genre").value(value.genre);
+            out.name("ai_name").value(value.ai_name);
+            out.name("cover_image_url").value(value.cover_image_url);
+            out.name("updated_at").value(value.updated_at);
+            writeList(out, "chapters", value.chapters, CHAPTER);
+            out.endObject();
+        }
+
+        @Override
+        public Story read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Story story = new Story();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id": story.id = readInt(in, story.id); break;
+                    case "title": story.title = readString(in); break;
+                    case "genre": story.genre = readString(in); break;
+                    case "ai_name": story.ai_name = readString(in); break;
+                    case "cover_image_url": story.cover_image_url = readString(in); break;
+                    case "updated_at": story.updated_at = readString(in); break;
+                    case "chapters": story.chapters = readList(in, CHAPTER); break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            return story;
+        }
+    };
+
+    static final TypeAdapter<FullStoryCreate> FULL_STORY_CREATE = new TypeAdapter<FullStoryCreate>() {
+        @Override
+        public void write(JsonWriter out, FullStoryCreate value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("title").value(value.title);
+            out.name("genre").value(value.genre);
+            out.name("ai_name").value(value.ai_name);
+            writeList(out, "chapters", value.chapters, CHAPTER);
+            out.endObject();
+        }
+
+        @Override
+        public FullStoryCreate read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            FullStoryCreate story = new FullStoryCreate(null, null, null, null);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "title": story.title = readString(in); break;
+                    case "genre": story.genre = readString(in); break;
+                    case "ai_name": story.ai_name = readString(in); break;
+                    case "chapters": story.chapters = readList(in, CHAPTER); break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            return story;
+        }
+    };
+
+    // --- Story turns ---
+
+    static final TypeAdapter<StoryEdit> STORY_EDIT = new TypeAdapter<StoryEdit>() {
+        @Override
+        public void write(JsonWriter out, StoryEdit value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("start").value(value.start);
+            out.name("end").value(value.end);
+            out.name("text").value(value.text);
+            out.endObject();
+        }
+
+        @Override
+        public StoryEdit read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            StoryEdit edit = new StoryEdit();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "start": edit.start = readInt(in, edit.start); break;
+                    case "end": edit.end = readInt(in, edit.end); break;
+                    case "text": edit.text = readString(in); break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            return edit;
+        }
+    };
+
+    static final TypeAdapter<StoryRequest> STORY_REQUEST = new TypeAdapter<StoryRequest>() {
+        @Override
+        public void write(JsonWriter out, StoryRequest value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("ai_name").value(value.aiName);
+            out.name("genre").value(value.genre);
+            out.name("story_context").value(value.storyContext);
+            out.name("user_input").value(value.userInput);
+            out.name("story_summary").value(value.storySummary);
+            if (value.chapterTitles != null) {
+                out.name("chapter_titles").beginArray();
+                for (String title : value.chapterTitles) {
+                    out.value(title);
+                }
+                out.endArray();
+            }
+            out.name("context_hash").value(value.contextHash);
+            out.endObject();
+        }
+
+        @Override
+        public StoryRequest read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            StoryRequest request = new StoryRequest(null, null, null, null);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "ai_name": request.aiName = readString(in); break;
+                    case "genre": request.genre = readString(in); break;
+                    case "story_context": request.storyContext = readString(in); break;
+                    case "user_input": request.userInput = readString(in); break;
+                    case "story_summary": request.storySummary = readString(in); break;
+                    case "chapter_titles": request.chapterTitles = readStringList(in); break;
+                    case "context_hash": request.contextHash = readString(in); break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            return request;
+        }
+    };
+
+    static final TypeAdapter<StoryResponse> STORY_RESPONSE = new TypeAdapter<StoryResponse>() {
+        @Override
+        public void write(JsonWriter out, StoryResponse value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("action").value(value.action);
+            out.name("story_text").value(value.storyText);
+            out.name("chat_response").value(value.chatResponse);
+            out.name("new_chapter_title").value(value.newChapterTitle);
+            writeList(out, "edits", value.edits, STORY_EDIT);
+            out.name("base_hash").value(value.baseHash);
+            out.endObject();
+        }
+
+        @Override
+        public StoryResponse read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            StoryResponse response = new StoryResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "action": response.action = readString(in); break;
+                    case "story_text": response.storyText = readString(in); break;
+                    case "chat_response": response.chatResponse = readString(in); break;
+                    case "new_chapter_title": response.newChapterTitle = readString(in); break;
+                    case "edits": response.edits = readList(in, STORY_EDIT); break;
+                    case "base_hash": response.baseHash = readString(in); break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            return response;
+        }
+    };
+
+    static final TypeAdapter<StoryStreamEvent> STORY_STREAM_EVENT = new TypeAdapter<StoryStreamEvent>() {
+        @Override
+        public void write(JsonWriter out, StoryStreamEvent value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("type").value(value.type);
+            out.name("action").value(value.action);
+            out.name("text").value(value.text);
+            out.name("story_text").value(value.storyText);
+            out.name("chat_response").value(value.chatResponse);
+            out.name("new_chapter_title").value(value.newChapterTitle);
+            writeList(out, "edits", value.edits, STORY_EDIT);
+            out.name("base_hash").value(value.baseHash);
+            out.endObject();
+        }
+
+        @Override
+        public StoryStreamEvent read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            StoryStreamEvent event = new StoryStreamEvent();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "type": event.type = readString(in); break;
+                    case "action": event.action = readString(in); break;
+                    case "text": event.text = readString(in); break;
+                    case "story_text": event.storyText = readString(in); break;
+                    case "chat_response": event.chatResponse = readString(in); break;
+                    case "new_chapter_title": event.newChapterTitle = readString(in); break;
+                    case "edits": event.edits = readList(in, STORY_EDIT); break;
+                    case "base_hash": event.baseHash = readString(in); break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            return event;
+        }
+    };
+
+    // --- Accounts ---
+
+    static final TypeAdapter<User> USER = new TypeAdapter<User>() {
+        @Override
+        public void write(JsonWriter out, User value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("username").value(value.username);
+            out.name("email").value(value.email);
+            out.name("password").value(value.password);
+            out.name("password2").value(value.password2);
+            out.endObject();
+        }
+
+        @Override
+        public User read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            User user = new User(null, null, null, null);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "username": user.username = readString(in); break;
+                    case "email": user.email = readString(in); break;
+                    case "password": user.password = readString(in); break;
+                    case "password2": user.password2 = readString(in); break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            return user;
+        }
+    };
+
+    static final TypeAdapter<UserRead> USER_READ = new TypeAdapter<UserRead>() {
+        @Override
+        public void write(JsonWriter out, UserRead value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("username").value(value.username);
+            out.name("email").value(value.email);
+            out.name("ai_name").value(value.ai_name);
+            out.endObject();
+        }
+
+        @Override
+        public UserRead read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            UserRead user = new UserRead();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "username": user.username = readString(in); break;
+                    case "email": user.email = readString(in); break;
+                    case "ai_name": user.ai_name = readString(in); break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            return user;
+        }
+    };
+
+    static final TypeAdapter<OtpVerify> OTP_VERIFY = new TypeAdapter<OtpVerify>() {
+        @Override
+        public void write(JsonWriter out, OtpVerify value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("email").value(value.email);
+            out.name("otp").value(value.otp);
+            out.endObject();
+        }
+
+        @Override
+        public OtpVerify read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            OtpVerify otpVerify = new OtpVerify(null, null);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "email": otpVerify.email = readString(in); break;
+                    case "otp": otpVerify.otp = readString(in); break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            return otpVerify;
+        }
+    };
+
+    static final TypeAdapter<Token> TOKEN = new TypeAdapter<Token>() {
+        @Override
+        public void write(JsonWriter out, Token value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("access_token").value(value.accessToken);
+            out.name("token_type").value(value.tokenType);
+            out.endObject();
+        }
+
+        @Override
+        public Token read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Token token = new Token();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "access_token": token.accessToken = readString(in); break;
+                    case "token_type": token.tokenType = readString(in); break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            return token;
+        }
+    };
+
+    static final TypeAdapter<GoogleToken> GOOGLE_TOKEN = new TypeAdapter<GoogleToken>() {
+        @Override
+        public void write(JsonWriter out, GoogleToken value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("token").value(value.token);
+            out.endObject();
+        }
+
+        @Override
+        public GoogleToken read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            GoogleToken token = new GoogleToken(null);
+            in.beginObject();
+            while (in.hasNext()) {
+                if ("token".equals(in.nextName())) {
+                    token.token = readString(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return token;
+        }
+    };
+
+    static final TypeAdapter<ApiService.AiNameUpdate> AI_NAME_UPDATE = new TypeAdapter<ApiService.AiNameUpdate>() {
+        @Override
+        public void write(JsonWriter out, ApiService.AiNameUpdate value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("ai_name").value(value.ai_name);
+            out.endObject();
+        }
+
+        @Override
+        public ApiService.AiNameUpdate read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            ApiService.AiNameUpdate update = new ApiService.AiNameUpdate(null);
+            in.beginObject();
+            while (in.hasNext()) {
+                if ("ai_name".equals(in.nextName())) {
+                    update.ai_name = readString(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return update;
+        }
+    };
+
+    static final TypeAdapter<ProfileStats> PROFILE_STATS = new TypeAdapter<ProfileStats>() {
+        @Override
+        public void write(JsonWriter out, ProfileStats value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("stories_created").value(value.stories_created);
+            out.name("total_words").value(value.total_words);
+            out.name("most_common_genre").value(value.most_common_genre);
+            out.endObject();
+        }
+
+        @Override
+        public ProfileStats read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            ProfileStats stats = new ProfileStats();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "stories_created": stats.stories_created = readInt(in, stats.stories_created); break;
+                    case "total_words": stats.total_words = readInt(in, stats.total_words); break;
+                    case "most_common_genre": stats.most_common_genre = readString(in); break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            return stats;
+        }
+    };
+
+    // --- Speech to text ---
+
+    static final TypeAdapter<WhisperResponse> WHISPER_RESPONSE = new TypeAdapter<WhisperResponse>() {
+        @Override
+        public void write(JsonWriter out, WhisperResponse value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("text").value(value.text);
+            out.endObject();
+        }
+
+        @Override
+        public WhisperResponse read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            WhisperResponse response = new WhisperResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                if ("text".equals(in.nextName())) {
+                    response.text = readString(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+    };
+
+    // --- Helpers (same leniency as Gson's built-in String and int adapters) ---
+
+    static String readString(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    // A JSON null leaves the field at its current value, like the reflective adapter does.
+    static int readInt(JsonReader in, int current) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return current;
+        }
+        return in.nextInt();
+    }
+
+    static <T> List<T> readList(JsonReader in, TypeAdapter<T> elementAdapter) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<T> list = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            list.add(elementAdapter.read(in));
+        }
+        in.endArray();
+        return list;
+    }
+
+    static List<String> readStringList(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<String> list = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            list.add(readString(in));
+        }
+        in.endArray();
+        return list;
+    }
+
+    static <T> void writeList(JsonWriter out, String name, List<T> list, TypeAdapter<T> elementAdapter) throws IOException {
+        if (list == null) {
+            return;
+        }
+        out.name(name).beginArray();
+        for (T element : list) {
+            elementAdapter.write(out, element);
+        }
+        out.endArray();
+    }
+}
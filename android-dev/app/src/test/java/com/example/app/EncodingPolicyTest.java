@@ -0,0 +1,108 @@
+package com.example.app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EncodingPolicyTest {
+
+    // Feeds the policy what streaming a 10 s segment at 'profile' over a link of the given speed
+    // should measure; StreamingAudioBodyTest checks that the body measures it.
+    private static void upload(EncodingPolicy policy, EncodingPolicy.Profile profile, double linkBytesPerSecond) {
+        long audioBytes = profile.bitRate / 8 * 10;
+        long audioMillis = 10_000;
+        long networkMillis = (long) (audioBytes * 1000 / linkBytesPerSecond);
+        if (networkMillis <= audioMillis) {
+            // Kept up: mostly waiting for the next chunk of audio
+            policy.recordUpload(audioBytes, audioMillis, networkMillis / 10);
+        } else {
+            policy.recordUpload(audioBytes, networkMillis, networkMillis - audioMillis / 10);
+        }
+    }
+
+    @Test
+    public void startsWithStandardProfile() {
+        EncodingPolicy policy = new EncodingPolicy();
+        assertSame(EncodingPolicy.STANDARD, policy.choose());
+        assertEquals(16000, policy.choose().sampleRate);
+        assertEquals(1, policy.choose().channels);
+    }
+
+    @Test
+    public void stepsUpOneProfileAtATimeWhileUploadsKeepUp() {
+        EncodingPolicy policy = new EncodingPolicy();
+        EncodingPolicy.Profile profile = policy.choose();
+        upload(policy, profile, 1_000_000);
+        profile = policy.choose();
+        assertSame(EncodingPolicy.HIGH, profile);
+        upload(policy, profile, 1_000_000);
+        assertSame(EncodingPolicy.HIGH, policy.choose());
+    }
+
+    @Test
+    public void dropsAtOnceOnASlowLink() {
+        EncodingPolicy policy = new EncodingPolicy();
+        upload(policy, policy.choose(), 1_000_000);
+        EncodingPolicy.Profile profile = policy.choose();
+        assertSame(EncodingPolicy.HIGH, profile);
+
+        // 2.5 KB/s: only the 16 kbps profile leaves headroom
+        upload(policy, profile, 2500);
+        assertSame(EncodingPolicy.MINIMAL, policy.choose());
+    }
+
+    @Test
+    public void recoversGraduallyWhenTheLinkImproves() {
+        EncodingPolicy policy = new EncodingPolicy();
+        upload(policy, policy.choose(), 2500);
+        EncodingPolicy.Profile profile = policy.choose();
+        assertSame(EncodingPolicy.MINIMAL, profile);
+
+        int clips = 0;
+        while (profile != EncodingPolicy.HIGH && clips < 10) {
+            upload(policy, profile, 1_000_000);
+            EncodingPolicy.Profile next = policy.choose();
+            assertTrue("skipped a profile", next.bitRate <= nextBitRate(profile));
+            profile = next;
+            clips++;
+        }
+        assertSame(EncodingPolicy.HIGH, profile);
+        assertTrue(clips >= 3);
+    }
+
+    @Test
+    public void slowTranscriptionsLeaveMoreHeadroom() {
+        EncodingPolicy fast = new EncodingPolicy();
+        EncodingPolicy slow = new EncodingPolicy();
+        for (EncodingPolicy policy : new EncodingPolicy[]{fast, slow}) {
+            // 5.5 KB/s, network-bound at the high profile
+            upload(policy, EncodingPolicy.HIGH, 5500);
+        }
+        slow.recordTranscriptionLatency(9000);
+        fast.recordTranscriptionLatency(1500);
+
+        // 75% of 44 kbps allows 32 kbps; 50% only 16 kbps
+        assertSame(EncodingPolicy.STANDARD, fast.choose());
+        assertSame(EncodingPolicy.MINIMAL, slow.choose());
+    }
+
+    @Test
+    public void describesItsEstimates() {
+        EncodingPolicy policy = new EncodingPolicy();
+        assertEquals("upload unmeasured, transcription unmeasured", policy.describe());
+        policy.recordUpload(40_960, 10_000, 9_000);
+        policy.recordTranscriptionLatency(1234);
+        assertEquals("upload 4.0 KB/s, transcription 1234 ms", policy.describe());
+        assertEquals("standard (16000 Hz, 1 ch, 32 kbps)", EncodingPolicy.STANDARD.toString());
+    }
+
+    private static int nextBitRate(EncodingPolicy.Profile profile) {
+        if (profile == EncodingPolicy.MINIMAL) {
+            return EncodingPolicy.LOW.bitRate;
+        }
+        if (profile == EncodingPolicy.LOW) {
+            return EncodingPolicy.STANDARD.bitRate;
+        }
+        return EncodingPolicy.HIGH.bitRate;
+    }
+}
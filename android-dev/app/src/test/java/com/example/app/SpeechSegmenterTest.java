@@ -0,0 +1,269 @@
+package com.example.app;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+// Runs the VAD and segmenter over the WAV fixtures in src/test/resources/vad (see
+// generate_fixtures.py there for what each one contains).
+public class SpeechSegmenterTest {
+
+    private static final int RATE = 16000;
+    private static final int FRAME = RATE * VoiceActivityDetector.DEFAULT_FRAME_MILLIS / 1000;
+
+    private static class Segment {
+        final int startedAtSample;
+        final List<Short> samples = new ArrayList<>();
+        boolean ended;
+
+        Segment(int startedAtSample) {
+            this.startedAtSample = startedAtSample;
+        }
+
+        short[] toArray() {
+            short[] array = new short[samples.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = samples.get(i);
+            }
+            return array;
+        }
+    }
+
+    private static class RecordingListener implements SpeechSegmenter.Listener {
+        final List<Segment> segments = new ArrayList<>();
+        int position;
+
+        @Override
+        public void onSegmentStart(int index) {
+            assertEquals(segments.size(), index);
+            segments.add(new Segment(position));
+        }
+
+        @Override
+        public void onAudio(short[] pcm, int offset, int length) {
+            Segment segment = segments.get(segments.size() - 1);
+            assertFalse(segment.ended);
+            for (int i = offset; i < offset + length; i++) {
+                segment.samples.add(pcm[i]);
+            }
+        }
+
+        @Override
+        public void onSegmentEnd(int index) {
+            assertEquals(segments.size() - 1, index);
+            segments.get(index).ended = true;
+        }
+    }
+
+    // Counts only, so the allocation test measures the segmenter and not the listener.
+    private static class CountingListener implements SpeechSegmenter.Listener {
+        int segments;
+        long samples;
+
+        @Override
+        public void onSegmentStart(int index) {
+            segments++;
+        }
+
+        @Override
+        public void onAudio(short[] pcm, int offset, int length) {
+            samples += length;
+        }
+
+        @Override
+        public void onSegmentEnd(int index) {
+        }
+    }
+
+    @Test
+    public void trimsLeadingAndTrailingSilence() throws IOException {
+        short[] pcm = readWav("speech_with_silence.wav");
+        List<Segment> segments = segment(pcm, SpeechSegmenter.DEFAULT_MIN_SEGMENT_MILLIS);
+
+        assertEquals(1, segments.size());
+        Segment segment = segments.get(0);
+        assertTrue(segment.ended);
+        // Speech starts at 1.0 s; it is confirmed a few frames in
+        assertEquals(1.0, seconds(segment.startedAtSample), 0.15);
+        // 1.2 s of speech plus a 0.2 s pad on either side, out of 3.7 s
+        assertEquals(1.6, seconds(segment.samples.size()), 0.15);
+    }
+
+    @Test
+    public void passesAudioThroughUnchanged() throws IOException {
+        short[] pcm = readWav("speech_with_silence.wav");
+        short[] voiced = segment(pcm, SpeechSegmenter.DEFAULT_MIN_SEGMENT_MILLIS).get(0).toArray();
+
+        int start = indexOf(pcm, voiced);
+        assertTrue("segment is not a contiguous slice of the input", start >= 0);
+        // The slice begins with the pad before the speech at 1.0 s
+        assertEquals(0.8, seconds(start), 0.1);
+    }
+
+    @Test
+    public void splitsLongSpeechAtPauses() throws IOException {
+        short[] pcm = readWav("two_utterances.wav");
+        List<Segment> segments = segment(pcm, 2000);
+
+        assertEquals(2, segments.size());
+        assertTrue(segments.get(0).ended);
+        assertTrue(segments.get(1).ended);
+        assertEquals(2.9, seconds(segments.get(0).samples.size()), 0.15);
+        assertEquals(1.9, seconds(segments.get(1).samples.size()), 0.15);
+    }
+
+    @Test
+    public void keepsShortSpeechTogetherButShortensThePause() throws IOException {
+        short[] pcm = readWav("two_utterances.wav");
+        List<Segment> segments = segment(pcm, SpeechSegmenter.DEFAULT_MIN_SEGMENT_MILLIS);
+
+        // The first utterance is too short to be split off
+        assertEquals(1, segments.size());
+        // 4.0 s of speech, the 0.7 s pause cut down to at most two pads, and the outer pads
+        double duration = seconds(segments.get(0).samples.size());
+        assertTrue("segment is " + duration + " s", duration > 4.3 && duration < 4.9);
+    }
+
+    @Test
+    public void ignoresKnocksAndSteadyNoise() throws IOException {
+        short[] pcm = readWav("noise_only.wav");
+        assertEquals(0, segment(pcm, SpeechSegmenter.DEFAULT_MIN_SEGMENT_MILLIS).size());
+    }
+
+    @Test
+    public void detectorRejectsHissAndAcceptsVoicedFrames() throws IOException {
+        short[] noise = readWav("noise_only.wav");
+        VoiceActivityDetector detector = new VoiceActivityDetector(RATE);
+        for (int offset = 0; offset + FRAME <= noise.length; offset += FRAME) {
+            boolean isSpeech = detector.isSpeech(noise, offset);
+            // The hiss is 13 dB above the room but has the zero-crossing rate of noise
+            if (seconds(offset) >= 1.5 && seconds(offset) < 2.5) {
+                assertFalse("frame at " + seconds(offset) + " s", isSpeech);
+            }
+        }
+
+        short[] speech = readWav("speech_with_silence.wav");
+        detector = new VoiceActivityDetector(RATE);
+        int voicedFrames = 0;
+        int framesInSpeech = 0;
+        for (int offset = 0; offset + FRAME <= speech.length; offset += FRAME) {
+            boolean isSpeech = detector.isSpeech(speech, offset);
+            if (seconds(offset) >= 1.05 && seconds(offset) < 2.15) {
+                framesInSpeech++;
+                if (isSpeech) {
+                    voicedFrames++;
+                }
+                // Voiced speech has few zero crossings compared with the white noise around it
+                assertTrue(detector.getLastZeroCrossingRate() < 0.25);
+            } else if (seconds(offset) < 0.95 || seconds(offset) > 2.3) {
+                assertFalse("frame at " + seconds(offset) + " s", isSpeech);
+            }
+        }
+        assertEquals(framesInSpeech, voicedFrames);
+    }
+
+    @Test
+    public void processingAllocatesNothing() throws IOException {
+        short[] pcm = readWav("two_utterances.wav");
+        CountingListener listener = new CountingListener();
+        // Warm up so class loading and compilation don't count
+        for (int i = 0; i < 5; i++) {
+            run(pcm, new SpeechSegmenter(new VoiceActivityDetector(RATE), RATE, listener));
+        }
+
+        SpeechSegmenter segmenter = new SpeechSegmenter(new VoiceActivityDetector(RATE), RATE, listener);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 20; i++) {
+            run(pcm, segmenter);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(listener.samples > 0);
+        // A little slack for the measurement itself
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static void run(short[] pcm, SpeechSegmenter segmenter) {
+        for (int offset = 0; offset + FRAME <= pcm.length; offset += FRAME) {
+            segmenter.process(pcm, offset);
+        }
+        segmenter.finish();
+    }
+
+    private static List<Segment> segment(short[] pcm, int minSegmentMillis) {
+        RecordingListener listener = new RecordingListener();
+        SpeechSegmenter segmenter = new SpeechSegmenter(new VoiceActivityDetector(RATE), RATE,
+                SpeechSegmenter.DEFAULT_PAD_MILLIS, SpeechSegmenter.DEFAULT_MIN_SPEECH_MILLIS,
+                SpeechSegmenter.DEFAULT_PAUSE_MILLIS, minSegmentMillis, listener);
+        for (int offset = 0; offset + FRAME <= pcm.length; offset += FRAME) {
+            listener.position = offset;
+            segmenter.process(pcm, offset);
+        }
+        segmenter.finish();
+        return listener.segments;
+    }
+
+    private static double seconds(int samples) {
+        return samples / (double) RATE;
+    }
+
+    private static int indexOf(short[] haystack, short[] needle) {
+        outer:
+        for (int start = 0; start + needle.length <= haystack.length; start++) {
+            for (int i = 0; i < needle.length; i++) {
+                if (haystack[start + i] != needle[i]) {
+                    continue outer;
+                }
+            }
+            return start;
+        }
+        return -1;
+    }
+
+    // Reads a 16-bit mono PCM WAV fixture.
+    private static short[] readWav(String name) throws IOException {
+        byte[] bytes;
+        try (InputStream in = SpeechSegmenterTest.class.getResourceAsStream("/vad/" + name)) {
+            assertNotNull("missing fixture " + name, in);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            bytes = out.toByteArray();
+        }
+        ByteBuffer wav = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(0x46464952, wav.getInt(0)); // "RIFF"
+        assertEquals(0x45564157, wav.getInt(8)); // "WAVE"
+        int position = 12;
+        while (position + 8 <= bytes.length) {
+            int chunkId = wav.getInt(position);
+            int chunkSize = wav.getInt(position + 4);
+            if (chunkId == 0x20746d66) { // "fmt "
+                assertEquals(1, wav.getShort(position + 8));        // PCM
+                assertEquals(1, wav.getShort(position + 10));       // mono
+                assertEquals(RATE, wav.getInt(position + 12));
+                assertEquals(16, wav.getShort(position + 22));      // bits per sample
+            } else if (chunkId == 0x61746164) { // "data"
+                short[] samples = new short[chunkSize / 2];
+                wav.position(position + 8);
+                wav.asShortBuffer().get(samples);
+                return samples;
+            }
+            position += 8 + chunkSize + (chunkSize & 1);
+        }
+        throw new IOException("No data chunk in " + name);
+    }
+}
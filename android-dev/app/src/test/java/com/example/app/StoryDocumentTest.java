@@ -0,0 +1,324 @@
+package com.example.app;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StoryDocumentTest {
+
+    // The same story kept the slow way: one StringBuilder and a list of chapter starts.
+    private static class Model {
+        final StringBuilder text = new StringBuilder();
+        final List<String> titles = new ArrayList<>();
+        final List<Integer> starts = new ArrayList<>();
+
+        void append(String s) {
+            text.append(s);
+        }
+
+        void startChapter(String title) {
+            titles.add(title);
+            starts.add(text.length());
+        }
+
+        // Marks at or before the edit stay, marks after it move by the change in length, and
+        // marks inside it keep their offset into the new text, clamped to its end.
+        void replace(int start, int end, String s) {
+            text.replace(start, end, s);
+            for (int i = 0; i < starts.size(); i++) {
+                int mark = starts.get(i);
+                if (mark <= start) {
+                    continue;
+                }
+                if (mark >= end) {
+                    starts.set(i, mark + s.length() - (end - start));
+                } else {
+                    starts.set(i, start + Math.min(mark - start, s.length()));
+                }
+            }
+        }
+    }
+
+    private static class Expected {
+        final StoryDocument.Snapshot snapshot;
+        final String text;
+        final List<String> titles;
+        final List<Integer> starts;
+
+        Expected(StoryDocument.Snapshot snapshot, Model model) {
+            this.snapshot = snapshot;
+            this.text = model.text.toString();
+            this.titles = new ArrayList<>(model.titles);
+            this.starts = new ArrayList<>(model.starts);
+        }
+    }
+
+    private static final String ALPHABET = "abcdefghij \n.,";
+
+    // Random text, sometimes long enough to span several leaves, sometimes with surrogate pairs.
+    private static String randomText(Random random) {
+        int length = random.nextInt(10) == 0 ? random.nextInt(2000) : random.nextInt(20);
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            if (random.nextInt(50) == 0) {
+                sb.append("📖");
+            } else {
+                sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void assertMatches(Expected expected) {
+        assertMatches(expected.snapshot, expected.text, expected.titles, expected.starts);
+    }
+
+    private static void assertMatches(StoryDocument.Snapshot snapshot, String text, List<String> titles, List<Integer> starts) {
+        assertEquals(text.length(), snapshot.length());
+        assertEquals(text, snapshot.toString());
+        assertEquals(titles.size(), snapshot.getChapterCount());
+        for (int i = 0; i < titles.size(); i++) {
+            assertEquals(titles.get(i), snapshot.getChapterTitle(i));
+            assertEquals((int) starts.get(i), snapshot.getChapterStart(i));
+            assertTrue("chapters out of order", i == 0 || starts.get(i - 1) <= starts.get(i));
+        }
+    }
+
+    @Test
+    public void randomEditsMatchAStringBuilder() {
+        for (long seed = 1; seed <= 20; seed++) {
+            Random random = new Random(seed);
+            StoryDocument document = new StoryDocument();
+            Model model = new Model();
+            List<Expected> snapshots = new ArrayList<>();
+
+            for (int step = 0; step < 400; step++) {
+                int op = random.nextInt(10);
+                if (op < 5) {
+                    String text = randomText(random);
+                    document.append(text);
+                    model.append(text);
+                } else if (op < 6) {
+                    String title = "Chapter " + step;
+                    document.startChapter(title);
+                    model.startChapter(title);
+                } else {
+                    int length = model.text.length();
+                    int start = random.nextInt(length + 1);
+                    int end = start + random.nextInt(Math.min(length - start, 3000) + 1);
+                    String text = random.nextInt(4) == 0 ? "" : randomText(random);
+                    document.replace(start, end, text);
+                    model.replace(start, end, text);
+                }
+                if (step % 25 == 0) {
+                    snapshots.add(new Expected(document.snapshot(), model));
+                }
+
+                StoryDocument.Snapshot snapshot = document.snapshot();
+                assertMatches(snapshot, model.text.toString(), model.titles, model.starts);
+                int length = snapshot.length();
+                if (length > 0) {
+                    int index = random.nextInt(length);
+                    assertEquals(model.text.charAt(index), document.charAt(index));
+                    int end = index + random.nextInt(length - index + 1);
+                    assertEquals(model.text.substring(index, end), snapshot.substring(index, end));
+                }
+            }
+
+            // Snapshots taken along the way still read as they did when they were taken
+            for (Expected expected : snapshots) {
+                assertMatches(expected);
+            }
+        }
+    }
+
+    @Test
+    public void snapshotIsUnchangedByLaterEdits() {
+        StoryDocument document = new StoryDocument();
+        document.append("Once upon a time. ");
+        document.startChapter("The Forest");
+        document.append("Trees everywhere.");
+        StoryDocument.Snapshot before = document.snapshot();
+
+        document.append(" More trees.");
+        document.replace(0, 4, "Twice");
+        document.startChapter("The River");
+        document.replace(5, document.length(), "");
+        document.clear();
+
+        assertMatches(before, "Once upon a time. Trees everywhere.",
+                Collections.singletonList("The Forest"), Collections.singletonList(18));
+        assertEquals(0, document.length());
+        assertEquals(0, document.snapshot().getChapterCount());
+    }
+
+    private static StoryDocument twoChapters() {
+        // Prologue 0..10, "One" 10..20, "Two" 20..30
+        StoryDocument document = new StoryDocument();
+        document.append("prologue. ");
+        document.startChapter("One");
+        document.append("chapter 1.");
+        document.startChapter("Two");
+        document.append("chapter 2.");
+        return document;
+    }
+
+    private static List<Integer> starts(StoryDocument document) {
+        StoryDocument.Snapshot snapshot = document.snapshot();
+        Integer[] starts = new Integer[snapshot.getChapterCount()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = snapshot.getChapterStart(i);
+        }
+        return Arrays.asList(starts);
+    }
+
+    @Test
+    public void replaceBeforeAChapterMovesIt() {
+        StoryDocument document = twoChapters();
+        document.replace(0, 10, "A much longer prologue. ");
+        assertEquals(Arrays.asList(24, 34), starts(document));
+        assertEquals("chapter 1.", document.snapshot().substring(24, 34));
+    }
+
+    @Test
+    public void replaceEndingAtAChapterMovesIt() {
+        StoryDocument document = twoChapters();
+        document.replace(5, 10, "");
+        assertEquals(Arrays.asList(5, 15), starts(document));
+    }
+
+    @Test
+    public void insertAtAChapterStartGoesIntoThatChapter() {
+        StoryDocument document = twoChapters();
+        document.replace(10, 10, "So: ");
+        assertEquals(Arrays.asList(10, 24), starts(document));
+        assertEquals("So: chapter 1.", document.snapshot().substring(10, 24));
+    }
+
+    @Test
+    public void replaceAfterAChapterLeavesItInPlace() {
+        StoryDocument document = twoChapters();
+        document.replace(25, 30, "");
+        assertEquals(Arrays.asList(10, 20), starts(document));
+    }
+
+    // A rewrite across chapter starts keeps the chapters: each keeps its offset into the new
+    // text, or lands at its end if the new text is shorter. None are dropped.
+    @Test
+    public void replaceAcrossChaptersClampsThemIntoTheNewText() {
+        StoryDocument document = twoChapters();
+        document.replace(5, 30, "0123456789ABCDEFGHIJ");
+        assertEquals(Arrays.asList(10, 20), starts(document));
+
+        document = twoChapters();
+        document.replace(5, 30, "short");
+        assertEquals(Arrays.asList(10, 10), starts(document));
+        assertEquals(Arrays.asList("One", "Two"), document.getChapterTitles());
+        assertEquals("", document.snapshot().substring(document.snapshot().getChapterStart(0),
+                document.snapshot().getChapterEnd(0)));
+
+        document = twoChapters();
+        document.replace(5, 30, "");
+        assertEquals(Arrays.asList(5, 5), starts(document));
+        assertEquals("prolo", document.toString());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void replaceOutOfRangeThrows() {
+        twoChapters().replace(20, 31, "");
+    }
+
+    // PdfExporter.fromSnapshot numbers chapters index + 1, with an opening chapter first when
+    // hasOpening(); toChapters must save the same list.
+    private static void assertMatchesExport(StoryDocument.Snapshot snapshot, List<Chapter> chapters) {
+        int offset = snapshot.hasOpening() ? 1 : 0;
+        assertEquals(snapshot.getChapterCount() + offset, chapters.size());
+        for (int index = 0; index < chapters.size(); index++) {
+            Chapter chapter = chapters.get(index);
+            assertEquals(index + 1, chapter.chapter_number);
+            if (index < offset) {
+                assertEquals(snapshot.getOpeningTitle(), chapter.title);
+                assertEquals(snapshot.substring(0, snapshot.getPrologueEnd()).trim(), chapter.content);
+            } else {
+                int i = index - offset;
+                assertEquals(snapshot.getChapterTitle(i), chapter.title);
+                assertEquals(snapshot.substring(snapshot.getChapterStart(i), snapshot.getChapterEnd(i)).trim(), chapter.content);
+            }
+        }
+    }
+
+    @Test
+    public void toChapters_storyWithoutHeadingsIsChapterOne() {
+        StoryDocument document = new StoryDocument();
+        document.append("  Just a story.\n");
+        List<Chapter> chapters = document.snapshot().toChapters();
+
+        assertEquals(1, chapters.size());
+        assertEquals(1, chapters.get(0).chapter_number);
+        assertEquals("Chapter 1", chapters.get(0).title);
+        assertEquals("Just a story.", chapters.get(0).content);
+        assertMatchesExport(document.snapshot(), chapters);
+
+        // Even an empty story is saved as one empty chapter
+        StoryDocument empty = new StoryDocument();
+        assertEquals(1, empty.snapshot().toChapters().size());
+        assertMatchesExport(empty.snapshot(), empty.snapshot().toChapters());
+    }
+
+    @Test
+    public void toChapters_textBeforeTheFirstHeadingIsAPrologue() {
+        StoryDocument.Snapshot snapshot = twoChapters().snapshot();
+        List<Chapter> chapters = snapshot.toChapters();
+
+        assertEquals(3, chapters.size());
+        assertEquals("Prologue", chapters.get(0).title);
+        assertEquals("prologue.", chapters.get(0).content);
+        assertEquals(2, chapters.get(1).chapter_number);
+        assertEquals("One", chapters.get(1).title);
+        assertEquals("chapter 1.", chapters.get(1).content);
+        assertEquals(3, chapters.get(2).chapter_number);
+        assertEquals("Two", chapters.get(2).title);
+        assertMatchesExport(snapshot, chapters);
+    }
+
+    @Test
+    public void toChapters_blankPrologueIsLeftOut() {
+        StoryDocument document = new StoryDocument();
+        document.append(" \n ");
+        document.startChapter("One");
+        document.append("chapter 1.");
+        StoryDocument.Snapshot snapshot = document.snapshot();
+        List<Chapter> chapters = snapshot.toChapters();
+
+        assertFalse(snapshot.hasOpening());
+        assertEquals(1, chapters.size());
+        assertEquals(1, chapters.get(0).chapter_number);
+        assertEquals("One", chapters.get(0).title);
+        assertMatchesExport(snapshot, chapters);
+    }
+
+    @Test
+    public void toChapters_matchesTheExportAfterRandomEdits() {
+        Random random = new Random(7);
+        StoryDocument document = new StoryDocument();
+        for (int step = 0; step < 300; step++) {
+            int op = random.nextInt(10);
+            if (op < 5) {
+                document.append(randomText(random));
+            } else if (op < 7) {
+                document.startChapter("Chapter " + step);
+            } else {
+                int start = random.nextInt(document.length() + 1);
+                int end = start + random.nextInt(document.length() - start + 1);
+                document.replace(start, end, random.nextBoolean() ? "" : randomText(random));
+            }
+            assertMatchesExport(document.snapshot(), document.snapshot().toChapters());
+        }
+    }
+}
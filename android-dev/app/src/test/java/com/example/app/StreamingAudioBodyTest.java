@@ -0,0 +1,276 @@
+package com.example.app;
+
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Sink;
+import okio.Timeout;
+
+import static org.junit.Assert.*;
+
+// Streams audio produced in real time through StreamingAudioBody into a sink that behaves like a
+// socket with a small send buffer on a link of a given speed, and checks what EncodingPolicy
+// makes of it.
+public class StreamingAudioBodyTest {
+
+    private static final MediaType AAC = MediaType.parse("audio/aac");
+    private static final int SEND_BUFFER = 1024;
+    // One second of audio at the high profile
+    private static final int AUDIO_BYTES_PER_SECOND = EncodingPolicy.HIGH.bitRate / 8;
+
+    // Accepts writes into a buffer of 'capacity' bytes that drains at 'bytesPerSecond', and
+    // blocks while it is full, as a socket's send buffer does.
+    private static class ThrottledSink implements Sink {
+        private final long capacity;
+        private final double bytesPerSecond;
+        private double queued;
+        private long lastNanos = System.nanoTime();
+
+        ThrottledSink(long capacity, double bytesPerSecond) {
+            this.capacity = capacity;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            while (byteCount > 0) {
+                drain();
+                long room = (long) (capacity - queued);
+                if (room <= 0) {
+                    sleepMillis(Math.max(1, (long) ((queued - capacity + 1) * 1000 / bytesPerSecond)));
+                    continue;
+                }
+                long accepted = Math.min(room, byteCount);
+                source.skip(accepted);
+                queued += accepted;
+                byteCount -= accepted;
+            }
+        }
+
+        private void drain() {
+            long now = System.nanoTime();
+            queued = Math.max(0, queued - (now - lastNanos) / 1e9 * bytesPerSecond);
+            lastNanos = now;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // Stands in for the transcription host behind a slow uplink: reads request bodies at
+    // 'bytesPerSecond' through a small receive buffer. HEAD requests (warm-ups) are answered at once.
+    private static class SlowServer implements Closeable {
+        final ServerSocket serverSocket = new ServerSocket();
+        final AtomicInteger connections = new AtomicInteger();
+        final AtomicInteger heads = new AtomicInteger();
+        private final double bytesPerSecond;
+
+        SlowServer(double bytesPerSecond) throws IOException {
+            this.bytesPerSecond = bytesPerSecond;
+            serverSocket.setReceiveBufferSize(1024);
+            serverSocket.bind(new InetSocketAddress("127.0.0.1", 0));
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) {
+                        Socket socket = serverSocket.accept();
+                        connections.incrementAndGet();
+                        Thread connection = new Thread(() -> serve(socket));
+                        connection.setDaemon(true);
+                        connection.start();
+                    }
+                } catch (IOException e) {
+                    // Closed
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+        }
+
+        private void serve(Socket socket) {
+            try (Socket s = socket) {
+                InputStream in = s.getInputStream();
+                OutputStream out = s.getOutputStream();
+                String requestLine;
+                while ((requestLine = readLine(in)) != null) {
+                    boolean chunked = false;
+                    for (String header = readLine(in); header != null && !header.isEmpty(); header = readLine(in)) {
+                        chunked |= header.equalsIgnoreCase("Transfer-Encoding: chunked");
+                    }
+                    if (requestLine.startsWith("HEAD")) {
+                        heads.incrementAndGet();
+                    } else if (chunked) {
+                        for (int size = Integer.parseInt(readLine(in), 16); size > 0; size = Integer.parseInt(readLine(in), 16)) {
+                            readSlowly(in, size);
+                            readLine(in);
+                        }
+                        readLine(in);
+                    }
+                    out.write("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Client went away
+            }
+        }
+
+        private void readSlowly(InputStream in, int size) throws IOException {
+            byte[] piece = new byte[100];
+            while (size > 0) {
+                int read = in.read(piece, 0, Math.min(piece.length, size));
+                if (read == -1) {
+                    throw new EOFException();
+                }
+                size -= read;
+                sleepMillis((long) (read * 1000 / bytesPerSecond));
+            }
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            for (int c = in.read(); c != '\n'; c = in.read()) {
+                if (c == -1) {
+                    return null;
+                }
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+            }
+            return line.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+
+    // Writes 'seconds' of high-profile audio to 'out' as it would be recorded, then closes it.
+    private static Thread produce(PipedOutputStream out, double seconds) {
+        Thread producer = new Thread(() -> {
+            byte[] chunk = new byte[AUDIO_BYTES_PER_SECOND / 20];
+            try {
+                for (int i = 0; i < seconds * 20; i++) {
+                    out.write(chunk);
+                    out.flush();
+                    sleepMillis(50);
+                }
+                out.close();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        producer.start();
+        return producer;
+    }
+
+    // Uploads 'seconds' of high-profile audio, produced as it would be recorded, over the link.
+    private static void upload(EncodingPolicy policy, double linkBytesPerSecond, double seconds) throws Exception {
+        PipedInputStream in = new PipedInputStream(64 * 1024);
+        Thread producer = produce(new PipedOutputStream(in), seconds);
+
+        StreamingAudioBody body = new StreamingAudioBody(AAC, in, policy, SEND_BUFFER);
+        try (BufferedSink sink = Okio.buffer(new ThrottledSink(SEND_BUFFER, linkBytesPerSecond))) {
+            body.writeTo(sink);
+        }
+        producer.join();
+    }
+
+    @Test
+    public void measuresALinkSlowerThanTheAudio() throws Exception {
+        EncodingPolicy policy = new EncodingPolicy();
+        // 2.5 KB/s can't carry 48 kbps, and only the 16 kbps profile leaves headroom
+        upload(policy, 2500, 1);
+        assertSame(EncodingPolicy.MINIMAL, policy.choose());
+    }
+
+    @Test
+    public void stepsUpWhenTheLinkKeepsUp() throws Exception {
+        EncodingPolicy policy = new EncodingPolicy();
+        upload(policy, 1_000_000, 1);
+        assertSame(EncodingPolicy.HIGH, policy.choose());
+    }
+
+    @Test
+    public void slowLinkIsNotMistakenForOneThatKeptUp() throws Exception {
+        EncodingPolicy policy = new EncodingPolicy();
+        upload(policy, 1_000_000, 1);
+        assertSame(EncodingPolicy.HIGH, policy.choose());
+
+        // Each upload over the slow link brings the estimate down rather than up
+        upload(policy, 2500, 1);
+        assertSame(EncodingPolicy.MINIMAL, policy.choose());
+        upload(policy, 2500, 1);
+        assertSame(EncodingPolicy.MINIMAL, policy.choose());
+    }
+
+    // The connection a warm-up opens is the one the upload goes out on; it must have been opened
+    // with the small send buffer too, or the upload never blocks and every link looks fast.
+    @Test
+    public void uploadOverAPrewarmedConnectionStillMeasuresTheLink() throws Exception {
+        try (SlowServer server = new SlowServer(1000)) {
+            OkHttpClient shared = new OkHttpClient();
+            OkHttpClient client = HuggingFaceRetrofitClient.newHttpClient(shared);
+            // The shared client has been to the host too, with default buffers
+            shared.newCall(new Request.Builder().url(server.url()).head().build()).execute().close();
+            ConnectionPrewarmer.prewarm(client, server.url());
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (client.connectionPool().idleConnectionCount() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, server.heads.get());
+
+            EncodingPolicy policy = new EncodingPolicy();
+            PipedInputStream in = new PipedInputStream(64 * 1024);
+            Thread producer = produce(new PipedOutputStream(in), 3);
+            StreamingAudioBody body = new StreamingAudioBody(AAC, in, policy, 2 * StreamingAudioBody.SEND_BUFFER_BYTES);
+            client.newCall(new Request.Builder().url(server.url()).post(body).build()).execute().close();
+            producer.join();
+
+            assertEquals("upload didn't reuse the warm connection", 2, server.connections.get());
+            // 1 KB/s under 48 kbps audio is network-bound: only the lowest profile fits
+            assertSame(policy.describe(), EncodingPolicy.MINIMAL, policy.choose());
+        }
+    }
+
+    private static void sleepMillis(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
+}
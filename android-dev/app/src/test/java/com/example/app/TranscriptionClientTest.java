@@ -0,0 +1,370 @@
+package com.example.app;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.*;
+
+// Runs TranscriptionClient against a local stand-in for the Whisper endpoint that can pretend
+// to be cold: it answers 503 "loading" with an estimated_time for a number of requests first.
+public class TranscriptionClientTest {
+
+    private static final MediaType AAC = MediaType.parse("audio/aac");
+    private static final String LOADING = "{\"error\":\"Model openai/whisper-large-v3 is currently loading\",\"estimated_time\":0.3}";
+
+    private HttpServer server;
+    private TranscriptionClient client;
+
+    // What the stand-in has seen and how it behaves; guarded by 'this'
+    private final List<byte[]> transcriptionBodies = new ArrayList<>();
+    private int warmUps;
+    private int coldResponses;
+    private int failWithStatus;
+
+    private static class RecordingCallback implements TranscriptionClient.Callback {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        Throwable error;
+
+        @Override
+        public void onTranscribed(String text) {
+            events.add("text:" + text);
+        }
+
+        @Override
+        public void onModelLoading(long retryInMillis) {
+            events.add("loading:" + retryInMillis);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+            events.add("error");
+        }
+
+        String next() throws InterruptedException {
+            String event = events.poll(5, TimeUnit.SECONDS);
+            assertNotNull("no callback", event);
+            return event;
+        }
+    }
+
+    // A body that can only be written once, like the streamed audio from the microphone.
+    private static class OneShotBody extends RequestBody implements Closeable {
+        final byte[] bytes;
+        boolean written;
+        volatile boolean closed;
+
+        OneShotBody(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return AAC;
+        }
+
+        @Override
+        public long contentLength() {
+            return -1;
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            assertFalse("one-shot body written twice", written);
+            written = true;
+            // In two parts, as a stream would arrive
+            sink.write(bytes, 0, bytes.length / 2);
+            sink.flush();
+            sink.write(bytes, bytes.length / 2, bytes.length - bytes.length / 2);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/models/openai/whisper-large-v3", this::handle);
+        server.start();
+        HuggingFaceApiService service = new Retrofit.Builder()
+                .baseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/")
+                .client(new OkHttpClient())
+                .addConverterFactory(GsonConverterFactory.create(NetworkCore.getGson()))
+                .build()
+                .create(HuggingFaceApiService.class);
+        client = new TranscriptionClient(service, NetworkCore.getGson(), "Bearer test", Runnable::run);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = readAll(exchange.getRequestBody());
+        int status;
+        String response;
+        synchronized (this) {
+            if ("audio/wav".equals(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+                warmUps++;
+            } else {
+                transcriptionBodies.add(body);
+            }
+            if (coldResponses > 0) {
+                coldResponses--;
+                status = 503;
+                response = LOADING;
+            } else if (failWithStatus != 0) {
+                status = failWithStatus;
+                response = "{\"error\":\"Bad request\"}";
+            } else {
+                status = 200;
+                response = "{\"text\":\"heard " + body.length + " bytes\"}";
+            }
+        }
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Test
+    public void retriesWhileTheModelLoads() throws Exception {
+        synchronized (this) {
+            coldResponses = 2;
+        }
+        RecordingCallback callback = new RecordingCallback();
+        long start = System.nanoTime();
+        client.transcribe(RequestBody.create(AAC, audio(1000, 1)), null, callback);
+
+        assertEquals("loading:300", callback.next());
+        assertEquals("loading:300", callback.next());
+        assertEquals("text:heard 1000 bytes", callback.next());
+        // Waited as long as the server estimated, twice
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 600);
+        synchronized (this) {
+            assertEquals(3, transcriptionBodies.size());
+        }
+    }
+
+    @Test
+    public void resendsAStreamedBodyAfterAColdStart() throws Exception {
+        synchronized (this) {
+            coldResponses = 1;
+        }
+        byte[] audio = audio(5000, 2);
+        RecordingCallback callback = new RecordingCallback();
+        client.transcribe(new OneShotBody(audio), null, callback);
+
+        assertEquals("loading:300", callback.next());
+        assertEquals("text:heard 5000 bytes", callback.next());
+        synchronized (this) {
+            assertEquals(2, transcriptionBodies.size());
+            assertArrayEquals(audio, transcriptionBodies.get(0));
+            assertArrayEquals(audio, transcriptionBodies.get(1));
+        }
+    }
+
+    @Test
+    public void answersDuplicateAudioFromTheCache() throws Exception {
+        byte[] audio = audio(2000, 3);
+        RecordingCallback first = new RecordingCallback();
+        client.transcribe(RequestBody.create(AAC, audio), null, first);
+        assertEquals("text:heard 2000 bytes", first.next());
+
+        RecordingCallback second = new RecordingCallback();
+        client.transcribe(RequestBody.create(AAC, audio), null, second);
+        assertEquals("text:heard 2000 bytes", second.next());
+
+        RecordingCallback other = new RecordingCallback();
+        client.transcribe(RequestBody.create(AAC, audio(2000, 4)), null, other);
+        assertEquals("text:heard 2000 bytes", other.next());
+
+        synchronized (this) {
+            // The duplicate never reached the model
+            assertEquals(2, transcriptionBodies.size());
+        }
+    }
+
+    @Test
+    public void alwaysSendsStreamedAudio() throws Exception {
+        byte[] audio = audio(2000, 9);
+        for (int i = 0; i < 2; i++) {
+            RecordingCallback callback = new RecordingCallback();
+            client.transcribe(new OneShotBody(audio), null, callback);
+            assertEquals("text:heard 2000 bytes", callback.next());
+        }
+        synchronized (this) {
+            // Can't be looked up before it has been sent
+            assertEquals(2, transcriptionBodies.size());
+        }
+    }
+
+    @Test
+    public void closesAStreamThatCouldNotBeSent() throws Exception {
+        server.stop(0);
+        OneShotBody body = new OneShotBody(audio(100, 10));
+        RecordingCallback callback = new RecordingCallback();
+        client.transcribe(body, null, callback);
+
+        assertEquals("error", callback.next());
+        assertFalse(body.written);
+        assertTrue(body.closed);
+    }
+
+    @Test
+    public void cancellingClosesTheStream() {
+        OneShotBody body = new OneShotBody(audio(100, 11));
+        client.transcribe(body, null, new RecordingCallback()).cancel();
+        assertTrue(body.closed);
+    }
+
+    @Test
+    public void reportsErrorsThatWaitingWontFix() throws Exception {
+        synchronized (this) {
+            failWithStatus = 400;
+        }
+        RecordingCallback callback = new RecordingCallback();
+        client.transcribe(RequestBody.create(AAC, audio(100, 5)), null, callback);
+
+        assertEquals("error", callback.next());
+        assertTrue(callback.error instanceof TranscriptionClient.ServerException);
+        assertEquals(400, ((TranscriptionClient.ServerException) callback.error).code);
+        synchronized (this) {
+            assertEquals(1, transcriptionBodies.size());
+        }
+    }
+
+    @Test
+    public void givesUpIfTheModelNeverLoads() throws Exception {
+        synchronized (this) {
+            coldResponses = Integer.MAX_VALUE;
+        }
+        RecordingCallback callback = new RecordingCallback();
+        client.transcribe(RequestBody.create(AAC, audio(100, 6)), null, callback);
+
+        for (int i = 1; i < TranscriptionClient.MAX_ATTEMPTS; i++) {
+            assertEquals("loading:300", callback.next());
+        }
+        assertEquals("error", callback.next());
+        assertEquals(503, ((TranscriptionClient.ServerException) callback.error).code);
+        synchronized (this) {
+            assertEquals(TranscriptionClient.MAX_ATTEMPTS, transcriptionBodies.size());
+        }
+    }
+
+    @Test
+    public void cancellingStopsRetries() throws Exception {
+        synchronized (this) {
+            coldResponses = Integer.MAX_VALUE;
+        }
+        RecordingCallback callback = new RecordingCallback();
+        TranscriptionClient.Transcription transcription =
+                client.transcribe(RequestBody.create(AAC, audio(100, 7)), null, callback);
+        assertEquals("loading:300", callback.next());
+        transcription.cancel();
+
+        assertNull(callback.events.poll(700, TimeUnit.MILLISECONDS));
+        synchronized (this) {
+            assertEquals(1, transcriptionBodies.size());
+        }
+    }
+
+    @Test
+    public void warmsUpOnlyWhileTheModelMightBeCold() throws Exception {
+        synchronized (this) {
+            coldResponses = 1;
+        }
+        client.warmUp();
+        client.warmUp();
+        awaitWarmUps(1);
+
+        // The warm-up's 503 doesn't count against the transcription that follows
+        RecordingCallback callback = new RecordingCallback();
+        client.transcribe(RequestBody.create(AAC, audio(100, 8)), null, callback);
+        assertEquals("text:heard 100 bytes", callback.next());
+        client.warmUp();
+
+        Thread.sleep(200);
+        synchronized (this) {
+            assertEquals(1, warmUps);
+            assertEquals(1, transcriptionBodies.size());
+        }
+    }
+
+    @Test
+    public void warmUpSendsAValidSilentClip() {
+        byte[] wav = TranscriptionClient.silentWav();
+        assertEquals("RIFF", new String(wav, 0, 4, StandardCharsets.US_ASCII));
+        assertEquals("WAVE", new String(wav, 8, 4, StandardCharsets.US_ASCII));
+        assertEquals(44 + EncodingPolicy.SAMPLE_RATE / 10 * 2, wav.length);
+        for (int i = 44; i < wav.length; i++) {
+            assertEquals(0, wav[i]);
+        }
+    }
+
+    private void awaitWarmUps(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            synchronized (this) {
+                if (warmUps >= count) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+        fail("no warm-up arrived");
+    }
+
+    private static byte[] audio(int length, int seed) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) seed);
+        bytes[0] = (byte) (length >> 8);
+        return bytes;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.app;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TypewriterRendererTest {
+
+    private static final long FRAME = 16_666_667L;
+
+    // Records how many characters each append touches, like the Editable behind the story TextView.
+    private static class CountingTarget implements Appendable {
+        final StringBuilder text = new StringBuilder();
+        final List<Integer> appendSizes = new ArrayList<>();
+
+        @Override
+        public Appendable append(CharSequence csq) {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            appendSizes.add(end - start);
+            text.append(csq, start, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            appendSizes.add(1);
+            text.append(c);
+            return this;
+        }
+    }
+
+    private static class ManualScheduler implements TypewriterRenderer.FrameScheduler {
+        TypewriterRenderer.FrameListener scheduled;
+        long frameTime = 0;
+
+        @Override
+        public void scheduleFrame(TypewriterRenderer.FrameListener listener) {
+            scheduled = listener;
+        }
+
+        @Override
+        public void cancelFrame(TypewriterRenderer.FrameListener listener) {
+            scheduled = null;
+        }
+
+        boolean runFrame() {
+            TypewriterRenderer.FrameListener listener = scheduled;
+            if (listener == null) {
+                return false;
+            }
+            scheduled = null;
+            frameTime += FRAME;
+            listener.onFrame(frameTime);
+            return true;
+        }
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) sb.append(s);
+        return sb.toString();
+    }
+
+    private static List<Integer> frameAppends(int queued) {
+        CountingTarget target = new CountingTarget();
+        ManualScheduler scheduler = new ManualScheduler();
+        TypewriterRenderer renderer = new TypewriterRenderer(target, scheduler);
+        renderer.enqueue(repeat("a", queued));
+        while (scheduler.runFrame()) { }
+        assertEquals(queued, target.text.length());
+        return target.appendSizes;
+    }
+
+    @Test
+    public void revealsAtTheConfiguredRate() {
+        // Less than a second's worth: 200 chars/s is 3-4 chars a frame, to the last frame
+        List<Integer> appends = frameAppends(150);
+        for (int i = 0; i < appends.size() - 1; i++) {
+            int size = appends.get(i);
+            assertTrue("frame " + i + " revealed " + size, size == 3 || size == 4);
+        }
+        assertEquals(45, appends.size(), 1);
+    }
+
+    @Test
+    public void catchUp_isABoundedBoostOnTheConfiguredRate() {
+        List<Integer> appends = frameAppends(2000);
+        // At most three times the configured rate while behind...
+        for (int size : appends) {
+            assertTrue("frame revealed " + size, size <= 11);
+        }
+        assertTrue(appends.get(0) >= 9);
+        // ...and the configured rate again once the backlog is under a second's worth, rather
+        // than slowing down as the queue empties
+        for (int i = appends.size() - 40; i < appends.size() - 1; i++) {
+            int size = appends.get(i);
+            assertTrue("frame " + i + " revealed " + size, size == 3 || size == 4);
+        }
+    }
+
+    @Test
+    public void revealsEverythingInOrder_oneAppendPerFrame() {
+        CountingTarget target = new CountingTarget();
+        ManualScheduler scheduler = new ManualScheduler();
+        TypewriterRenderer renderer = new TypewriterRenderer(target, scheduler);
+
+        renderer.enqueue("Hello, ");
+        renderer.enqueue("world.");
+        int frames = 0;
+        while (scheduler.runFrame()) frames++;
+
+        assertEquals("Hello, world.", target.text.toString());
+        assertEquals(frames, target.appendSizes.size());
+        assertTrue(renderer.isIdle());
+    }
+
+    @Test
+    public void pause_stopsFrames_andResumeContinues() {
+        CountingTarget target = new CountingTarget();
+        ManualScheduler scheduler = new ManualScheduler();
+        TypewriterRenderer renderer = new TypewriterRenderer(target, scheduler);
+
+        renderer.enqueue(repeat("a", 200));
+        scheduler.runFrame();
+        renderer.pause();
+        assertNull(scheduler.scheduled);
+        int revealed = target.text.length();
+
+        renderer.resume();
+        while (scheduler.runFrame()) { }
+        assertTrue(revealed < 200);
+        assertEquals(200, target.text.length());
+    }
+
+    @Test
+    public void flush_writesPendingTextImmediately() {
+        CountingTarget target = new CountingTarget();
+        ManualScheduler scheduler = new ManualScheduler();
+        TypewriterRenderer renderer = new TypewriterRenderer(target, scheduler);
+
+        renderer.enqueue("Once upon a time");
+        renderer.flush();
+
+        assertEquals("Once upon a time", target.text.toString());
+        assertNull(scheduler.scheduled);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.app;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+
+// Parses a 500-story library payload with reflective Gson and with WireTypeAdapters.
+// Not a unit test; run main() from the IDE on a JVM. Reports the first parse (cold binding)
+// separately from the steady state. Each path runs in a JVM of its own: in a shared one, the
+// path that runs second would find Gson's classes already loaded and compiled, and its cold
+// number would look better than it is.
+public class WireTypeAdaptersBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 50;
+    private static final int MEASURED_ITERATIONS = 200;
+    private static final String[] PATHS = {"reflective", "adapters"};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            for (String path : PATHS) {
+                fork(path);
+            }
+            return;
+        }
+        Type type = new TypeToken<List<Story>>() {}.getType();
+        String payload = new Gson().toJson(WireTypeAdaptersTest.library(500, 3), type);
+        if ("reflective".equals(args[0])) {
+            System.out.printf(Locale.US, "payload %d KB%n", payload.length() / 1024);
+            run("reflective", new Gson(), payload, type);
+        } else {
+            run("adapters", new GsonBuilder().registerTypeAdapterFactory(WireTypeAdapters.FACTORY).create(), payload, type);
+        }
+    }
+
+    // Runs main(path) in a fresh JVM with our classpath.
+    private static void fork(String path) throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                WireTypeAdaptersBenchmark.class.getName(), path)
+                .inheritIO()
+                .start();
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException(path + " run failed");
+        }
+    }
+
+    private static void run(String name, Gson gson, String payload, Type type) {
+        long start = System.nanoTime();
+        List<Story> first = gson.fromJson(payload, type);
+        long coldNanos = System.nanoTime() - start;
+
+        int sink = first.size();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            List<Story> stories = gson.fromJson(payload, type);
+            sink += stories.size();
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            List<Story> stories = gson.fromJson(payload, type);
+            sink += stories.size();
+        }
+        long perParseNanos = (System.nanoTime() - start) / MEASURED_ITERATIONS;
+        System.out.printf(Locale.US, "%-10s cold %.2f ms  steady %.2f ms/parse  (%d)%n",
+                name, coldNanos / 1e6, perParseNanos / 1e6, sink);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.app;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WireTypeAdaptersTest {
+
+    private final Gson reflective = new Gson();
+    private final Gson streaming = new GsonBuilder().registerTypeAdapterFactory(WireTypeAdapters.FACTORY).create();
+
+    static List<Story> library(int stories, int chaptersPerStory) {
+        List<Story> library = new ArrayList<>(stories);
+        for (int s = 0; s < stories; s++) {
+            Story story = new Story();
+            story.id = s + 1;
+            story.title = "Story \"" + s + "\" — the long night";
+            story.genre = s % 2 == 0 ? "Fantasy" : "Sci-Fi";
+            story.ai_name = "Scrybe";
+            story.cover_image_url = s % 3 == 0 ? null : "/covers/story_" + s + ".png";
+            story.updated_at = "2026-03-" + (10 + s % 20) + "T08:15:00.123456";
+            story.chapters = new ArrayList<>();
+            for (int c = 0; c < chaptersPerStory; c++) {
+                Chapter chapter = new Chapter(c + 1, "Chapter " + (c + 1), "The wind moved through the trees.\n\nShe waited. ".repeat(20));
+                chapter.id = s * 100 + c;
+                chapter.story_id = story.id;
+                story.chapters.add(chapter);
+            }
+            library.add(story);
+        }
+        return library;
+    }
+
+    private void assertSameJson(Object value, Type type) {
+        String expected = reflective.toJson(value, type);
+        assertEquals(expected, streaming.toJson(value, type));
+        // Parsing with the adapter and writing back reflectively gives the same document
+        assertEquals(expected, reflective.toJson(streaming.fromJson(expected, type), type));
+    }
+
+    @Test
+    public void libraryMatchesReflectiveGson() {
+        Type type = new TypeToken<List<Story>>() {}.getType();
+        assertSameJson(library(500, 3), type);
+    }
+
+    @Test
+    public void turnModelsMatchReflectiveGson() {
+        StoryRequest request = new StoryRequest("Scrybe", "Fantasy", "Once upon a time.", "go on",
+                "A summary.", Arrays.asList("One", "Two"));
+        assertSameJson(request, StoryRequest.class);
+        assertSameJson(new StoryRequest("Scrybe", "Fantasy", "text", null), StoryRequest.class);
+
+        StoryEdit edit = new StoryEdit();
+        edit.start = 3;
+        edit.end = 9;
+        edit.text = "dark";
+        StoryResponse response = new StoryResponse();
+        response.action = "REPLACE";
+        response.chatResponse = "Done.";
+        response.edits = Arrays.asList(edit);
+        response.baseHash = "0123456789abcdef";
+        assertSameJson(response, StoryResponse.class);
+
+        StoryStreamEvent event = new StoryStreamEvent();
+        event.type = StoryStreamEvent.TYPE_TEXT;
+        event.text = "It was";
+        assertSameJson(event, StoryStreamEvent.class);
+
+        assertSameJson(new FullStoryCreate("T", "Horror", "Scrybe", library(1, 2).get(0).chapters), FullStoryCreate.class);
+    }
+
+    @Test
+    public void accountModelsMatchReflectiveGson() {
+        assertSameJson(new User("u", "u@example.com", "p", "p"), User.class);
+        assertSameJson(new OtpVerify("u@example.com", "123456"), OtpVerify.class);
+        assertSameJson(new GoogleToken("abc"), GoogleToken.class);
+        assertSameJson(new ApiService.AiNameUpdate("Quill"), ApiService.AiNameUpdate.class);
+
+        Token token = new Token();
+        token.accessToken = "jwt";
+        token.tokenType = "bearer";
+        assertSameJson(token, Token.class);
+
+        UserRead user = new UserRead();
+        user.username = "u";
+        user.ai_name = "Quill";
+        assertSameJson(user, UserRead.class);
+
+        ProfileStats stats = new ProfileStats();
+        stats.stories_created = 4;
+        stats.total_words = 12000;
+        stats.most_common_genre = "Mystery";
+        assertSameJson(stats, ProfileStats.class);
+
+        WhisperResponse whisper = new WhisperResponse();
+        whisper.text = "hello";
+        assertSameJson(whisper, WhisperResponse.class);
+    }
+
+    @Test
+    public void skipsUnknownFieldsAndAcceptsNulls() {
+        String json = "{\"id\":7,\"extra\":{\"nested\":[1,2]},\"title\":null,\"chapters\":[null,{\"id\":null,\"content\":\"x\"}]}";
+        Story story = streaming.fromJson(json, Story.class);
+        assertEquals(7, story.id);
+        assertNull(story.title);
+        assertEquals(2, story.chapters.size());
+        assertNull(story.chapters.get(0));
+        assertEquals(0, story.chapters.get(1).id);
+        assertEquals("x", story.chapters.get(1).content);
+    }
+}
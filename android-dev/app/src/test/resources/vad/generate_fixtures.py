@@ -0,0 +1,88 @@
+#!/usr/bin/env python3
+# Regenerates the VAD test fixtures (16 kHz mono 16-bit WAV). Deterministic.
+#
+# "Speech" is a glottal pulse train with a wandering pitch through two formant resonators, with
+# a syllable-rate envelope: loud, low zero-crossing rate, like voiced speech. The background is
+# quiet white noise, like a phone microphone in a room.
+import math
+import random
+import struct
+import wave
+
+RATE = 16000
+
+
+def noise(seconds, dbfs, rng):
+    amplitude = 32768 * 10 ** (dbfs / 20)
+    return [rng.gauss(0, amplitude) for _ in range(int(seconds * RATE))]
+
+
+def resonator(signal, frequency, bandwidth):
+    r = math.exp(-math.pi * bandwidth / RATE)
+    a1 = 2 * r * math.cos(2 * math.pi * frequency / RATE)
+    a2 = -r * r
+    out, y1, y2 = [], 0.0, 0.0
+    for x in signal:
+        y = x + a1 * y1 + a2 * y2
+        out.append(y)
+        y1, y2 = y, y1
+    return out
+
+
+def voiced(seconds, dbfs, rng):
+    n = int(seconds * RATE)
+    pulses, phase = [], 0.0
+    for i in range(n):
+        f0 = 120 + 20 * math.sin(2 * math.pi * 0.7 * i / RATE)
+        phase += f0 / RATE
+        if phase >= 1:
+            phase -= 1
+            pulses.append(1.0)
+        else:
+            pulses.append(0.0)
+    shaped = resonator(resonator(pulses, 700, 130), 1200, 150)
+    peak = max(abs(s) for s in shaped) or 1
+    amplitude = 32768 * 10 ** (dbfs / 20)
+    out = []
+    for i, s in enumerate(shaped):
+        syllables = 0.6 + 0.4 * math.sin(2 * math.pi * 4 * i / RATE)
+        edge = min(1.0, i / 400, (n - i) / 400)
+        out.append(s / peak * amplitude * syllables * edge)
+    return out
+
+
+def mix(background, signal, at_seconds):
+    start = int(at_seconds * RATE)
+    for i, s in enumerate(signal):
+        background[start + i] += s
+    return background
+
+
+def write(name, samples):
+    with wave.open(name, "wb") as out:
+        out.setnchannels(1)
+        out.setsampwidth(2)
+        out.setframerate(RATE)
+        out.writeframes(b"".join(struct.pack("<h", max(-32768, min(32767, int(s)))) for s in samples))
+
+
+def main():
+    rng = random.Random(22)
+
+    # 1.0 s room, 1.2 s speech, 1.5 s room
+    clip = noise(3.7, -60, rng)
+    write("speech_with_silence.wav", mix(clip, voiced(1.2, -18, rng), 1.0))
+
+    # 0.4 s room, 2.5 s speech, 0.7 s pause, 1.5 s speech, 0.4 s room
+    clip = noise(5.5, -60, rng)
+    mix(clip, voiced(2.5, -18, rng), 0.4)
+    write("two_utterances.wav", mix(clip, voiced(1.5, -18, rng), 3.6))
+
+    # Room noise with a 10 ms knock and a second of louder hiss (a fan), but no speech
+    clip = noise(3.0, -60, rng)
+    mix(clip, noise(0.01, -12, rng), 0.8)
+    write("noise_only.wav", mix(clip, noise(1.0, -47, rng), 1.5))
+
+
+if __name__ == "__main__":
+    main()
@@ -1,12 +1,16 @@
 # cluxssy/scrybe/Scrybe-c94d3f327bfcadc6ab5122064c5ce42612e537fa/whisprr-backend/main.py
 import os
 import google.generativeai as genai
-from fastapi import FastAPI, Depends, HTTPException, Request, status, BackgroundTasks
+from fastapi import FastAPI, Depends, HTTPException, Request, Response, status, BackgroundTasks
 from fastapi.security import OAuth2PasswordBearer, OAuth2PasswordRequestForm
 from fastapi.staticfiles import StaticFiles
+from fastapi.responses import StreamingResponse
+from fastapi.middleware.gzip import GZipMiddleware
 from pydantic import BaseModel
 from dotenv import load_dotenv
-from sqlmodel import Session, SQLModel, create_engine, select
+from request_compression import GzipRequestMiddleware
+from sqlmodel import Session, SQLModel, create_engine, select, func
+from sqlalchemy import text
 import models
 import json
 import requests
@@ -16,6 +20,9 @@ from passlib.context import CryptContext
 from jose import JWTError, jwt
 from datetime import datetime, timedelta
 import random
+import re
+import hashlib
+from difflib import SequenceMatcher
 from fastapi_mail import FastMail, MessageSchema, ConnectionConfig
 from google.oauth2 import id_token
 from google.auth.transport import requests as google_requests
@@ -33,6 +40,27 @@ GOOGLE_CLIENT_ID = os.getenv("GOOGLE_CLIENT_ID")
 
 app = FastAPI()
 
+# --- COMPRESSION ---
+# Gzipped request bodies are inflated (request_compression.py). Responses over 1 KB are gzipped
+# when the client accepts it, except streams.
+# GZipMiddleware only flushes when the response ends, which would hold back every event of a
+# streamed response until the last one; those routes go out uncompressed.
+NO_GZIP_PATHS = {"/api/continue_story/stream"}
+
+class SelectiveGZipMiddleware:
+    def __init__(self, app, minimum_size=500):
+        self.app = app
+        self.gzip_app = GZipMiddleware(app, minimum_size=minimum_size)
+
+    async def __call__(self, scope, receive, send):
+        if scope["type"] == "http" and scope["path"] in NO_GZIP_PATHS:
+            await self.app(scope, receive, send)
+            return
+        await self.gzip_app(scope, receive, send)
+
+app.add_middleware(SelectiveGZipMiddleware, minimum_size=1024)
+app.add_middleware(GzipRequestMiddleware)
+
 # --- NEW MODEL FOR GOOGLE TOKEN ---
 class GoogleToken(BaseModel):
     token: str
@@ -87,6 +115,16 @@ def create_access_token(data: dict, expires_delta: Optional[timedelta] = None):
 COVERS_DIR = "covers"
 os.makedirs(COVERS_DIR, exist_ok=True)
 app.mount("/covers", StaticFiles(directory=COVERS_DIR), name="covers")
+COVER_MAX_AGE = 365 * 24 * 3600
+
+@app.middleware("http")
+async def cache_covers(request: Request, call_next):
+    # Cover URLs carry a version (?v=...) that changes whenever the cover is regenerated, so
+    # clients may keep them in their disk cache indefinitely.
+    response = await call_next(request)
+    if request.url.path.startswith("/covers/") and response.status_code == 200:
+        response.headers["Cache-Control"] = f"public, max-age={COVER_MAX_AGE}, immutable"
+    return response
 
 # --- DATABASE ---
 DATABASE_URL = "sqlite:///database.db"
@@ -94,6 +132,13 @@ engine = create_engine(DATABASE_URL, echo=True)
 
 def create_db_and_tables():
     SQLModel.metadata.create_all(engine)
+    # Databases created before story.updated_at existed get the column added in place
+    with engine.begin() as connection:
+        columns = [row[1] for row in connection.execute(text("PRAGMA table_info(story)"))]
+        if "updated_at" not in columns:
+            connection.execute(text("ALTER TABLE story ADD COLUMN updated_at DATETIME"))
+            connection.execute(text("UPDATE story SET updated_at = CURRENT_TIMESTAMP"))
+            connection.execute(text("CREATE INDEX IF NOT EXISTS ix_story_updated_at ON story (updated_at)"))
 
 @app.on_event("startup")
 def on_startup():
@@ -257,14 +302,28 @@ def health():
 class StoryRequest(BaseModel):
     ai_name: str = "Orion"
     genre: str
+    # Only the most recent part of the story; older text arrives as story_summary
     story_context: str
     user_input: str
+    story_summary: Optional[str] = None
+    chapter_titles: List[str] = []
+    # Hash of story_context as the client has it; lets REPLACE answers come back as edits
+    context_hash: Optional[str] = None
+
+class StoryEdit(BaseModel):
+    # UTF-16 offsets into story_context, so the Android client can apply them directly
+    start: int
+    end: int
+    text: str
 
 class StoryResponse(BaseModel):
     action: str
     story_text: str
     chat_response: str
     new_chapter_title: Optional[str] = None
+    # For REPLACE: edits against the text whose hash is base_hash (story_text is then empty)
+    edits: Optional[List[StoryEdit]] = None
+    base_hash: Optional[str] = None
 
 class FullStoryCreate(BaseModel):
     title: str
@@ -276,6 +335,48 @@ class AiNameUpdate(BaseModel):
     ai_name: str
 
 # --- STORY GENERATION ---
+def content_hash(text: str) -> str:
+    return hashlib.sha256(text.encode("utf-8")).hexdigest()[:16]
+
+def utf16_length(text: str) -> int:
+    return len(text.encode("utf-16-le")) // 2
+
+def compute_edits(old: str, new: str) -> List[StoryEdit]:
+    # Word-level diff keeps this fast on a full context window.
+    old_tokens = re.findall(r"\S+|\s+", old)
+    new_tokens = re.findall(r"\S+|\s+", new)
+    offsets = [0]
+    for token in old_tokens:
+        offsets.append(offsets[-1] + utf16_length(token))
+    edits = []
+    for tag, i1, i2, j1, j2 in SequenceMatcher(None, old_tokens, new_tokens, autojunk=False).get_opcodes():
+        if tag != "equal":
+            edits.append(StoryEdit(start=offsets[i1], end=offsets[i2], text="".join(new_tokens[j1:j2])))
+    return edits
+
+def as_replace_edits(request: StoryRequest, response: StoryResponse) -> StoryResponse:
+    # Send a REPLACE as edits when the client told us what it has and the edits are smaller
+    # than the rewrite; otherwise leave the full story_text in place.
+    if response.action != "REPLACE" or not request.context_hash:
+        return response
+    if request.context_hash != content_hash(request.story_context):
+        return response
+    edits = compute_edits(request.story_context, response.story_text)
+    if sum(len(e.text) for e in edits) >= len(response.story_text):
+        return response
+    response.edits = edits
+    response.base_hash = request.context_hash
+    response.story_text = ""
+    return response
+
+def format_earlier_story(request: StoryRequest) -> str:
+    parts = []
+    if request.chapter_titles:
+        parts.append("CHAPTERS SO FAR: " + "; ".join(request.chapter_titles))
+    if request.story_summary:
+        parts.append("EARLIER IN THE STORY (summary, do not repeat or rewrite):\n" + request.story_summary)
+    return "\n".join(parts)
+
 @app.post("/api/continue_story", response_model=StoryResponse)
 async def continue_story(request: StoryRequest):
     prompt = f"""
@@ -296,7 +397,9 @@ async def continue_story(request: StoryRequest):
         "Chapter X: Title"
         [story text continues here]
 
-    STORY SO FAR:
+    {format_earlier_story(request)}
+
+    STORY SO FAR (most recent part; for REPLACE, rewrite only this part):
     ---
     {request.story_context}
     ---
@@ -317,12 +420,12 @@ async def continue_story(request: StoryRequest):
         
         response_data = json.loads(cleaned_response_text)
         
-        return StoryResponse(
+        return as_replace_edits(request, StoryResponse(
             action=response_data.get("action", "CHAT"),
             story_text=response_data.get("story_text", ""),
             chat_response=response_data.get("chat_response", "I seem to be at a loss for words. Could you try again?"),
             new_chapter_title=response_data.get("new_chapter_title")
-        )
+        ))
     except (json.JSONDecodeError, Exception) as e:
         print(f"An error occurred decoding the AI's JSON response: {e}")
         print(f"Raw AI Response was: {response.text}")
@@ -332,6 +435,118 @@ async def continue_story(request: StoryRequest):
             chat_response="I'm having a little trouble thinking right now. Could you rephrase that?"
         )
 
+# --- STREAMING STORY GENERATION ---
+# Same decision as /api/continue_story, but the model answers in a plain-text layout we can
+# parse while it is still generating, and the result is sent as JSON lines:
+#   {"type": "start", "action": ..., "new_chapter_title": ...}
+#   {"type": "text", "text": ...}            (zero or more story fragments; not sent for REPLACE)
+#   {"type": "end", ...the StoryResponse fields; REPLACE may come as "edits" + "base_hash"}
+STREAM_STORY_MARKER = "STORY:"
+STREAM_CHAT_MARKER = "\nCHAT:"
+
+def build_stream_prompt(request: StoryRequest) -> str:
+    return f"""
+    You are a creative partner named {request.ai_name}.
+
+    Analyze the user's instruction based on the story so far and choose one of five actions:
+    APPEND (regular continuation), REPLACE (an editing command), CHAPTER (a natural break that starts a new chapter),
+    CHAT (the user is just talking to you) or REFUSE (harmful or explicit content).
+
+    {format_earlier_story(request)}
+
+    STORY SO FAR (most recent part; for REPLACE, rewrite only this part):
+    ---
+    {request.story_context}
+    ---
+    USER'S INSTRUCTION:
+    ---
+    {request.user_input}
+    ---
+    Answer in exactly this layout, with no markdown and no JSON:
+    ACTION: <one of APPEND, REPLACE, CHAPTER, CHAT, REFUSE>
+    CHAPTER: <the new chapter title if ACTION is CHAPTER, otherwise NONE>
+    STORY:
+    <the story text; leave empty for CHAT and REFUSE>
+    CHAT:
+    <your short conversational message to the user>
+    """
+
+def parse_stream_header(header: str):
+    action, chapter_title = "CHAT", None
+    for line in header.splitlines():
+        key, _, value = line.partition(":")
+        key, value = key.strip().upper(), value.strip()
+        if key == "ACTION" and value:
+            action = value.upper()
+        elif key == "CHAPTER" and value and value.upper() != "NONE":
+            chapter_title = value
+    return action, chapter_title
+
+def stream_story_events(request: StoryRequest, prompt: str):
+    buffer = ""
+    header_done = False
+    story_done = False
+    action, chapter_title = "CHAT", None
+    story_parts = []
+    chat_text = ""
+
+    def event(data: dict) -> str:
+        return json.dumps(data) + "\n"
+
+    try:
+        for chunk in text_model.generate_content(prompt, stream=True):
+            buffer += chunk.text or ""
+            if not header_done:
+                marker_at = buffer.find(STREAM_STORY_MARKER)
+                if marker_at < 0:
+                    continue
+                action, chapter_title = parse_stream_header(buffer[:marker_at])
+                buffer = buffer[marker_at + len(STREAM_STORY_MARKER):].lstrip("\n")
+                header_done = True
+                yield event({"type": "start", "action": action, "new_chapter_title": chapter_title})
+            if not story_done:
+                chat_at = buffer.find(STREAM_CHAT_MARKER)
+                if chat_at >= 0:
+                    fragment, buffer = buffer[:chat_at], buffer[chat_at + len(STREAM_CHAT_MARKER):]
+                    story_done = True
+                else:
+                    # Hold back enough characters to never split the CHAT marker.
+                    safe = max(0, len(buffer) - len(STREAM_CHAT_MARKER))
+                    fragment, buffer = buffer[:safe], buffer[safe:]
+                if fragment:
+                    story_parts.append(fragment)
+                    # A rewrite is diffed against the client's text once it's complete.
+                    if action != "REPLACE":
+                        yield event({"type": "text", "text": fragment})
+        if not header_done:
+            # The model ignored the layout; treat the whole answer as a chat message.
+            yield event({"type": "start", "action": "CHAT", "new_chapter_title": None})
+            chat_text = buffer.strip() or "I seem to be at a loss for words. Could you try again?"
+        elif not story_done:
+            story_parts.append(buffer)
+            if action != "REPLACE":
+                yield event({"type": "text", "text": buffer})
+        else:
+            chat_text = buffer.strip()
+    except Exception as e:
+        print(f"An error occurred while streaming the AI's response: {e}")
+        if not header_done:
+            yield event({"type": "start", "action": "CHAT", "new_chapter_title": None})
+            action = "CHAT"
+        chat_text = "I'm having a little trouble thinking right now. Could you rephrase that?"
+
+    result = as_replace_edits(request, StoryResponse(
+        action=action,
+        story_text="".join(story_parts).strip(),
+        chat_response=chat_text,
+        new_chapter_title=chapter_title,
+    ))
+    yield event({"type": "end", **result.model_dump(exclude_none=True)})
+
+@app.post("/api/continue_story/stream")
+async def continue_story_stream(request: StoryRequest):
+    return StreamingResponse(stream_story_events(request, build_stream_prompt(request)), media_type="application/x-ndjson")
+
 # --- CREATE STORY ---
 @app.post("/api/stories", response_model=models.StoryRead)
 def create_story(story_data: FullStoryCreate, session: Session = Depends(get_session), current_user: models.User = Depends(get_current_user)):
@@ -355,12 +570,49 @@ def create_story(story_data: FullStoryCreate, session: Session = Depends(get_ses
 
 # --- GET ALL STORIES (with chapters) ---
 @app.get("/api/stories", response_model=List[models.StoryRead])
-def read_stories(session: Session = Depends(get_session), current_user: models.User = Depends(get_current_user)):
-    stories = session.exec(
-        select(models.Story).where(models.Story.user_id == current_user.id).options(selectinload(models.Story.chapters))
-    ).all()
+def read_stories(response: Response, updated_since: Optional[datetime] = None, session: Session = Depends(get_session), current_user: models.User = Depends(get_current_user)):
+    # Taken before the query, so a story saved while we read is sent again next time, never missed
+    sync_time = datetime.utcnow()
+    query = select(models.Story).where(models.Story.user_id == current_user.id)
+    if updated_since is not None:
+        query = query.where(models.Story.updated_at > updated_since.replace(tzinfo=None))
+    stories = session.exec(query.options(selectinload(models.Story.chapters))).all()
+
+    # The app passes X-Sync-Time back as updated_since, and compares X-Story-Count with its own
+    # count to notice deleted stories.
+    story_count = session.exec(
+        select(func.count()).select_from(models.Story).where(models.Story.user_id == current_user.id)
+    ).one()
+    response.headers["X-Sync-Time"] = sync_time.isoformat()
+    response.headers["X-Story-Count"] = str(story_count)
     return stories
 
+# --- LIBRARY LIST (summaries, paged by story id) ---
+MAX_SUMMARY_PAGE = 200
+
+@app.get("/api/stories/summaries", response_model=models.StorySummaryPage)
+def read_story_summaries(response: Response, cursor: Optional[int] = None, limit: int = 50,
+                         updated_since: Optional[datetime] = None,
+                         session: Session = Depends(get_session), current_user: models.User = Depends(get_current_user)):
+    limit = max(1, min(limit, MAX_SUMMARY_PAGE))
+    sync_time = datetime.utcnow()
+    query = select(models.Story).where(models.Story.user_id == current_user.id)
+    if cursor is not None:
+        query = query.where(models.Story.id > cursor)
+    if updated_since is not None:
+        query = query.where(models.Story.updated_at > updated_since.replace(tzinfo=None))
+    # One extra row tells us whether there is a next page
+    stories = session.exec(query.order_by(models.Story.id).limit(limit + 1)).all()
+    next_cursor = stories[limit - 1].id if len(stories) > limit else None
+
+    story_count = session.exec(
+        select(func.count()).select_from(models.Story).where(models.Story.user_id == current_user.id)
+    ).one()
+    response.headers["X-Sync-Time"] = sync_time.isoformat()
+    response.headers["X-Story-Count"] = str(story_count)
+    summaries = [models.StorySummary.model_validate(story) for story in stories[:limit]]
+    return models.StorySummaryPage(stories=summaries, next_cursor=next_cursor)
+
 # --- GET SINGLE STORY (with chapters) ---
 @app.get("/api/stories/{story_id}", response_model=models.StoryRead)
 def read_story(story_id: int, session: Session = Depends(get_session)):
@@ -373,6 +625,33 @@ def read_story(story_id: int, session: Session = Depends(get_session)):
         raise HTTPException(status_code=404, detail="Story not found")
     return story
 
+# --- STORY OUTLINE (chapter titles only) ---
+# The reader opens a story from its outline and fetches chapter text as it is scrolled to.
+@app.get("/api/stories/{story_id}/outline", response_model=models.StoryOutline)
+def read_story_outline(story_id: int, session: Session = Depends(get_session)):
+    story = session.get(models.Story, story_id)
+    if not story:
+        raise HTTPException(status_code=404, detail="Story not found")
+    rows = session.exec(
+        select(models.Chapter.id, models.Chapter.chapter_number, models.Chapter.title)
+        .where(models.Chapter.story_id == story_id)
+        .order_by(models.Chapter.chapter_number)
+    ).all()
+    chapters = [models.ChapterOutline(id=row[0], chapter_number=row[1], title=row[2]) for row in rows]
+    summary = models.StorySummary.model_validate(story)
+    return models.StoryOutline(**summary.model_dump(), chapters=chapters)
+
+# --- SINGLE CHAPTER (with text) ---
+@app.get("/api/stories/{story_id}/chapters/{chapter_number}", response_model=models.ChapterRead)
+def read_chapter(story_id: int, chapter_number: int, session: Session = Depends(get_session)):
+    chapter = session.exec(
+        select(models.Chapter)
+        .where(models.Chapter.story_id == story_id, models.Chapter.chapter_number == chapter_number)
+    ).first()
+    if not chapter:
+        raise HTTPException(status_code=404, detail="Chapter not found")
+    return chapter
+
 @app.put("/api/users/me/ai_name", response_model=models.UserRead)
 def update_ai_name(
     ai_name_data: AiNameUpdate,
@@ -442,7 +721,10 @@ def generate_cover(story_id: int, request: Request, session: Session = Depends(g
     with open(filepath, "wb") as f:
         f.write(hf_resp.content)
 
-    story.cover_image_url = str(request.base_url) + f"covers/{filename}"
+    # The file name is reused when a cover is regenerated; the version keeps cached copies apart
+    version = int(datetime.utcnow().timestamp())
+    story.cover_image_url = str(request.base_url) + f"covers/{filename}?v={version}"
+    story.updated_at = datetime.utcnow()
     session.add(story)
     session.commit()
     session.refresh(story)
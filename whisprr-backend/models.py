@@ -48,6 +48,8 @@ class Story(SQLModel, table=True):
     genre: str
     ai_name: str
     cover_image_url: Optional[str] = None
+    # Bumped on every change to the story or its chapters; drives the app's delta sync
+    updated_at: datetime.datetime = Field(default_factory=datetime.datetime.utcnow, index=True)
 
     chapters: List["Chapter"] = Relationship(back_populates="story")
     
@@ -90,11 +92,41 @@ class StoryRead(BaseModel):
     genre: str
     ai_name: str
     cover_image_url: Optional[str]
+    updated_at: Optional[datetime.datetime] = None
     chapters: List[ChapterRead] = []
 
     class Config:
         from_attributes = True
 
+# What the library list needs: no chapters
+class StorySummary(BaseModel):
+    id: int
+    title: str
+    genre: str
+    ai_name: str
+    cover_image_url: Optional[str]
+    updated_at: Optional[datetime.datetime] = None
+
+    class Config:
+        from_attributes = True
+
+class StorySummaryPage(BaseModel):
+    stories: List[StorySummary]
+    # Pass as ?cursor= for the next page; None on the last page
+    next_cursor: Optional[int] = None
+
+# A story's table of contents: chapter titles without their text
+class ChapterOutline(BaseModel):
+    id: int
+    chapter_number: int
+    title: str
+
+    class Config:
+        from_attributes = True
+
+class StoryOutline(StorySummary):
+    chapters: List[ChapterOutline] = []
+
 class StoryCreate(BaseModel):
     title: str
     genre: str
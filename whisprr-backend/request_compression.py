@@ -0,0 +1,79 @@
+import json
+import zlib
+
+# The app gzips large request bodies (story context, saved chapters); inflate them before the
+# routes see them. Both sizes are capped, so a small body can't inflate into gigabytes: a long
+# story is a few hundred KB of prose.
+MAX_COMPRESSED_BYTES = 2 * 1024 * 1024
+MAX_INFLATED_BYTES = 8 * 1024 * 1024
+
+
+class BodyTooLarge(Exception):
+    pass
+
+
+def inflate(data, max_inflated=MAX_INFLATED_BYTES):
+    # Raises BodyTooLarge past 'max_inflated' bytes, zlib.error if 'data' isn't one gzip member.
+    inflater = zlib.decompressobj(16 + zlib.MAX_WBITS)
+    body = inflater.decompress(data, max_inflated + 1)
+    if len(body) > max_inflated or inflater.unconsumed_tail:
+        raise BodyTooLarge()
+    if not inflater.eof:
+        raise zlib.error("truncated gzip body")
+    return body
+
+
+async def send_error(send, status, detail):
+    body = json.dumps({"detail": detail}).encode()
+    await send({
+        "type": "http.response.start",
+        "status": status,
+        "headers": [(b"content-type", b"application/json"), (b"content-length", str(len(body)).encode())],
+    })
+    await send({"type": "http.response.body", "body": body})
+
+
+class GzipRequestMiddleware:
+    def __init__(self, app, max_compressed=MAX_COMPRESSED_BYTES, max_inflated=MAX_INFLATED_BYTES):
+        self.app = app
+        self.max_compressed = max_compressed
+        self.max_inflated = max_inflated
+
+    async def __call__(self, scope, receive, send):
+        if scope["type"] != "http" or dict(scope["headers"]).get(b"content-encoding") != b"gzip":
+            await self.app(scope, receive, send)
+            return
+
+        chunks = []
+        size = 0
+        more_body = True
+        while more_body:
+            message = await receive()
+            chunk = message.get("body", b"")
+            size += len(chunk)
+            if size > self.max_compressed:
+                await send_error(send, 413, "Request body too large")
+                return
+            chunks.append(chunk)
+            more_body = message.get("more_body", False)
+        try:
+            body = inflate(b"".join(chunks), self.max_inflated)
+        except BodyTooLarge:
+            await send_error(send, 413, "Request body too large")
+            return
+        except zlib.error:
+            await send_error(send, 400, "Invalid gzip request body")
+            return
+
+        headers = [(k, v) for k, v in scope["headers"] if k not in (b"content-encoding", b"content-length")]
+        headers.append((b"content-length", str(len(body)).encode()))
+        body_sent = False
+
+        async def receive_inflated():
+            nonlocal body_sent
+            if not body_sent:
+                body_sent = True
+                return {"type": "http.request", "body": body, "more_body": False}
+            return await receive()
+
+        await self.app(dict(scope, headers=headers), receive_inflated, send)
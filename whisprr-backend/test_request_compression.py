@@ -0,0 +1,74 @@
+import asyncio
+import gzip
+import json
+import unittest
+
+from request_compression import GzipRequestMiddleware
+
+# Run with: python -m unittest (from whisprr-backend)
+
+
+async def echo_app(scope, receive, send):
+    message = await receive()
+    body = message["body"]
+    await send({"type": "http.response.start", "status": 200, "headers": []})
+    await send({"type": "http.response.body", "body": body})
+
+
+def call(body, chunk_size=64 * 1024, **limits):
+    # Sends 'body' (gzip-encoded) through the middleware; returns (status, response body).
+    chunks = [body[i:i + chunk_size] for i in range(0, len(body), chunk_size)] or [b""]
+    messages = [
+        {"type": "http.request", "body": chunk, "more_body": i < len(chunks) - 1}
+        for i, chunk in enumerate(chunks)
+    ]
+    sent = []
+
+    async def receive():
+        return messages.pop(0)
+
+    async def send(message):
+        sent.append(message)
+
+    scope = {
+        "type": "http",
+        "path": "/api/continue_story",
+        "headers": [(b"content-encoding", b"gzip"), (b"content-length", str(len(body)).encode())],
+    }
+    asyncio.run(GzipRequestMiddleware(echo_app, **limits)(scope, receive, send))
+    return sent[0]["status"], b"".join(m.get("body", b"") for m in sent[1:])
+
+
+class GzipRequestMiddlewareTest(unittest.TestCase):
+
+    def test_inflates_body(self):
+        text = json.dumps({"story_context": "The fog rolled in. " * 1000}).encode()
+        status, body = call(gzip.compress(text), chunk_size=1000)
+        self.assertEqual(200, status)
+        self.assertEqual(text, body)
+
+    def test_rejects_body_that_inflates_past_the_limit(self):
+        # 64 MB of zeros is about 64 KB compressed
+        bomb = gzip.compress(bytes(64 * 1024 * 1024))
+        status, body = call(bomb)
+        self.assertEqual(413, status)
+        self.assertEqual({"detail": "Request body too large"}, json.loads(body))
+
+    def test_rejects_compressed_body_past_the_limit(self):
+        status, _ = call(gzip.compress(b"x" * 10_000), max_compressed=10)
+        self.assertEqual(413, status)
+
+    def test_accepts_body_exactly_at_the_limit(self):
+        status, body = call(gzip.compress(b"x" * 1000), max_inflated=1000)
+        self.assertEqual(200, status)
+        self.assertEqual(1000, len(body))
+
+    def test_rejects_invalid_gzip(self):
+        status, _ = call(b"not gzip at all")
+        self.assertEqual(400, status)
+        status, _ = call(gzip.compress(b"x" * 1000)[:-10])
+        self.assertEqual(400, status)
+
+
+if __name__ == "__main__":
+    unittest.main()